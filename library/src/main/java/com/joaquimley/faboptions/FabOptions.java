@@ -16,40 +16,49 @@
 
 package com.joaquimley.faboptions;
 
-import android.animation.ObjectAnimator;
-import android.annotation.SuppressLint;
+import android.animation.Animator;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.content.res.TypedArray;
-import android.graphics.PorterDuff;
 import android.graphics.drawable.AnimatedVectorDrawable;
 import android.graphics.drawable.Drawable;
+import android.graphics.drawable.ScaleDrawable;
 import android.graphics.drawable.VectorDrawable;
 import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.support.annotation.ColorInt;
 import android.support.annotation.ColorRes;
+import android.support.annotation.IdRes;
+import android.support.annotation.IntDef;
 import android.support.annotation.MenuRes;
 import android.support.annotation.Nullable;
 import android.support.annotation.RequiresApi;
 import android.support.design.widget.CoordinatorLayout;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v4.content.ContextCompat;
-import android.support.v7.view.SupportMenuInflater;
-import android.support.v7.view.menu.MenuBuilder;
+import android.support.v4.graphics.drawable.DrawableCompat;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.content.res.AppCompatResources;
 import android.support.v7.widget.AppCompatImageView;
-import android.transition.ChangeBounds;
 import android.transition.ChangeTransform;
 import android.transition.Transition;
 import android.transition.TransitionManager;
 import android.transition.TransitionSet;
+import android.transition.TransitionValues;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
-import android.view.Menu;
-import android.view.MenuItem;
+import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.FrameLayout;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 
 import static com.joaquimley.faboptions.R.drawable.faboptions_ic_overflow;
 
@@ -57,26 +66,87 @@ import static com.joaquimley.faboptions.R.drawable.faboptions_ic_overflow;
  * FabOptions component
  */
 @CoordinatorLayout.DefaultBehavior(FabOptionsBehavior.class)
-public class FabOptions extends FrameLayout implements View.OnClickListener {
+public class FabOptions extends ViewGroup implements View.OnClickListener {
 
 	private static final String TAG = "FabOptions";
 
+	public static final int STATE_CLOSED = 0;
+	public static final int STATE_OPENING = 1;
+	public static final int STATE_OPEN = 2;
+	public static final int STATE_CLOSING = 3;
+
+	@IntDef({STATE_CLOSED, STATE_OPENING, STATE_OPEN, STATE_CLOSING})
+	@Retention(RetentionPolicy.SOURCE)
+	public @interface State {
+	}
+
+	/**
+	 * Morph transitions from Lollipop (default), the single animator below
+	 */
+	public static final int ANIMATION_DRIVER_TRANSITIONS = 0;
+	/**
+	 * A single animator on every API level, no transition scene is captured on toggle
+	 */
+	public static final int ANIMATION_DRIVER_ANIMATOR = 1;
+
+	@IntDef({ANIMATION_DRIVER_TRANSITIONS, ANIMATION_DRIVER_ANIMATOR})
+	@Retention(RetentionPolicy.SOURCE)
+	public @interface AnimationDriver {
+	}
+
+	private static final int NO_PENDING_ANIMATION_DRIVER = -1;
+
 	private static final String SUPER_INSTANCE_STATE = "superInstanceState";
 	private static final String FAB_OPTIONS_IS_OPEN = "fabOptionsIsOpen";
 
-	private static final int NO_DIMENSION = 0;
-	private static final long CLOSE_MORPH_TRANSFORM_DURATION = 70;
+	static final int BACKGROUND_REVEALED_LEVEL = 10000;
+	static final int BACKGROUND_HIDDEN_LEVEL = 0;
+	static final long CLOSE_MORPH_TRANSFORM_DURATION = 70;
+	private static final int MAX_CACHED_BACKGROUNDS = 4;
 
-	private boolean mIsAnimating;
+	@State
+	private int mState = STATE_CLOSED;
 	private boolean mIsOpen;
 	private View.OnClickListener mClickListener;
 
-	private Menu mMenu;
+	private FabOptionsMenuCache.ParsedMenu mMenu;
+	private final SparseArray<Drawable.ConstantState> mIconStates = new SparseArray<>();
 	private FloatingActionButton mFab;
 
+	private Drawable mOpenIcon;
+	private Drawable mCloseIcon;
+
 	private View mBackground;
-	private View mSeparator;
 	private FabOptionsButtonContainer mButtonContainer;
+	private int mMinContentHeight;
+
+	private boolean mHasBackgroundColor;
+	@ColorInt
+	private int mBackgroundColor;
+	private final SparseArray<Drawable> mBackgroundDrawables = new SparseArray<>(MAX_CACHED_BACKGROUNDS);
+	private final int[] mCachedBackgroundColors = new int[MAX_CACHED_BACKGROUNDS];
+	private int mNextCachedBackground;
+	private boolean mDrawnButtons;
+	private FabOptionsButtonPool mButtonPool;
+	@MenuRes
+	private int mPendingMenuId;
+	private ButtonsWarmUp mButtonsWarmUp;
+
+	private TransitionSet mOpenTransition;
+	private TransitionSet mCloseTransition;
+	private Transition.TransitionListener mMorphTransitionListener;
+	private FabOptionsAnimationStateListener mAnimationStateListener;
+	private Transition mRunningTransition;
+	private FabOptionsAnimator mMorphAnimator;
+	@AnimationDriver
+	private int mAnimationDriver = ANIMATION_DRIVER_TRANSITIONS;
+	private int mPendingAnimationDriver = NO_PENDING_ANIMATION_DRIVER;
+	private long mButtonsStaggerDelay;
+	private FabOptionsFrameTracker mFrameTracker;
+
+	private boolean mHardwareLayersEnabled = true;
+	private int mHardwareLayerCount;
+	private long mHardwareLayersPromotedAt;
 
 	public FabOptions(Context context) {
 		this(context, null);
@@ -88,18 +158,37 @@ public class FabOptions extends FrameLayout implements View.OnClickListener {
 
 	public FabOptions(Context context, AttributeSet attrs, int defStyleAttr) {
 		super(context, attrs, defStyleAttr);
-		initViews(context);
-		setInitialFabIcon();
-
-		TypedArray fabOptionsAttributes = context.getTheme().obtainStyledAttributes(attrs, R.styleable.FabOptions, 0, 0);
-		styleComponent(context, fabOptionsAttributes);
-		inflateButtonsFromAttrs(context, fabOptionsAttributes);
+		boolean traced = FabOptionsTrace.begin(FabOptionsTrace.CONSTRUCTOR);
+		try {
+			TypedArray fabOptionsAttributes = context.getTheme().obtainStyledAttributes(attrs, R.styleable.FabOptions, 0, 0);
+			initViews(context, fabOptionsAttributes.getBoolean(R.styleable.FabOptions_lazy_buttons, false));
+			initFabIcons(context);
+			setInitialFabIcon();
+
+			styleComponent(context, fabOptionsAttributes);
+			inflateButtonsFromAttrs(context, fabOptionsAttributes);
+			fabOptionsAttributes.recycle();
+		} finally {
+			FabOptionsTrace.end(traced);
+		}
 	}
 
+	/**
+	 * @return true when open or opening, the state the component is heading to
+	 */
 	public boolean isOpen() {
 		return mIsOpen;
 	}
 
+	@State
+	public int getState() {
+		return mState;
+	}
+
+	/**
+	 * Opens the component, reversing a running close animation from its current progress. A
+	 * {@link FabOptionsAnimationCancelListener} is told when the animation it waits for is reversed
+	 */
 	public void open(@Nullable final FabOptionsAnimationStateListener listener) {
 		expand(listener);
 	}
@@ -136,18 +225,53 @@ public class FabOptions extends FrameLayout implements View.OnClickListener {
 	}
 
 	public void setBackgroundColor(Context context, @ColorInt int backgroundColor) {
-		Drawable backgroundShape = ContextCompat.getDrawable(context, R.drawable.faboptions_background);
-		if (backgroundShape != null) {
-			backgroundShape.setColorFilter(backgroundColor, PorterDuff.Mode.ADD);
+		mHasBackgroundColor = true;
+		mBackgroundColor = backgroundColor;
+		if (mBackground != null) {
+			applyBackgroundColor(context, backgroundColor);
+		}
+	}
+
+	/**
+	 * Background drawables are kept per color (up to {@link #MAX_CACHED_BACKGROUNDS}), switching
+	 * back to a previous color reuses its tinted drawable, the same color is a no-op
+	 */
+	private void applyBackgroundColor(Context context, @ColorInt int backgroundColor) {
+		Drawable currentBackground = mBackground.getBackground();
+		if (currentBackground != null && currentBackground == mBackgroundDrawables.get(backgroundColor)) {
+			return;
 		}
 
+		Drawable background = mBackgroundDrawables.get(backgroundColor);
+		if (background == null) {
+			Drawable backgroundShape = ContextCompat.getDrawable(context, R.drawable.faboptions_background);
+			if (backgroundShape == null) {
+				return;
+			}
+			backgroundShape = DrawableCompat.wrap(backgroundShape.mutate());
+			DrawableCompat.setTint(backgroundShape, backgroundColor);
+			background = createRevealDrawable(backgroundShape);
+			cacheBackground(backgroundColor, background);
+		}
+		background.setLevel(currentBackground != null ? currentBackground.getLevel()
+				: mIsOpen ? BACKGROUND_REVEALED_LEVEL : BACKGROUND_HIDDEN_LEVEL);
+
 		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-			mBackground.setBackground(backgroundShape);
+			mBackground.setBackground(background);
 		} else {
-			mBackground.setBackgroundDrawable(backgroundShape);
+			mBackground.setBackgroundDrawable(background);
 		}
 	}
 
+	private void cacheBackground(@ColorInt int backgroundColor, Drawable background) {
+		if (mBackgroundDrawables.size() >= MAX_CACHED_BACKGROUNDS) {
+			mBackgroundDrawables.remove(mCachedBackgroundColors[mNextCachedBackground]);
+		}
+		mBackgroundDrawables.put(backgroundColor, background);
+		mCachedBackgroundColors[mNextCachedBackground] = backgroundColor;
+		mNextCachedBackground = (mNextCachedBackground + 1) % MAX_CACHED_BACKGROUNDS;
+	}
+
 	/**
 	 * @deprecated Prefer passing resolved color {@link #setBackgroundColor(Context, int)} for safe context
 	 */
@@ -162,13 +286,143 @@ public class FabOptions extends FrameLayout implements View.OnClickListener {
 	}
 
 	public boolean setButtonColor(int buttonId, @ColorRes int color) {
-		for (int i = 0; i < mButtonContainer.getChildCount(); i++) {
-			if (mMenu.getItem(i).getItemId() == buttonId) {
-				return styleButton(i, color);
-			}
+		ensureButtonContainer();
+		if (!mButtonContainer.setButtonColorFilter(buttonId, ContextCompat.getColor(getContext(), color))) {
+			Log.d(TAG, "setButtonColor(): Couldn't find button with id " + buttonId);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Changes the color of several buttons at once, the color is only resolved once
+	 *
+	 * @return true if all the buttons were found
+	 */
+	public boolean setButtonsColor(@ColorRes int color, int... buttonIds) {
+		ensureButtonContainer();
+		int styled = mButtonContainer.setButtonsColorFilter(buttonIds, ContextCompat.getColor(getContext(), color));
+		return styled == buttonIds.length;
+	}
+
+	/**
+	 * Changes the color of several buttons at once
+	 *
+	 * @param buttonColors resolved {@link ColorInt} colors (values) by button id (keys)
+	 * @return true if all the buttons were found
+	 */
+	public boolean setButtonColors(SparseIntArray buttonColors) {
+		ensureButtonContainer();
+		int styled = mButtonContainer.setButtonsColorFilter(buttonColors);
+		return styled == buttonColors.size();
+	}
+
+	/**
+	 * Draws the buttons icons inside a single view instead of inflating one view per button,
+	 * lighter when many FabOptions are on screen. Must be set before the buttons menu.
+	 */
+	public void setDrawnButtonsEnabled(boolean enabled) {
+		mDrawnButtons = enabled;
+		if (mButtonContainer != null) {
+			applyDrawnButtons(enabled);
+			initMorphTransitions();
+		}
+	}
+
+	private void applyDrawnButtons(boolean enabled) {
+		mButtonContainer.setDrawnButtonsEnabled(enabled);
+		mButtonContainer.setOnDrawnButtonClickListener(enabled ? this : null);
+		if (enabled) {
+			mButtonContainer.setIconScale(mIsOpen ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Renders the buttons into hardware layers while they're scaled by the open/close animation,
+	 * enabled by default. Run with "adb shell setprop log.tag.FabOptions DEBUG" to log each promotion.
+	 */
+	public void setHardwareLayersEnabled(boolean enabled) {
+		mHardwareLayersEnabled = enabled;
+		if (!enabled) {
+			releaseHardwareLayers();
+		}
+	}
+
+	public boolean isHardwareLayersEnabled() {
+		return mHardwareLayersEnabled;
+	}
+
+	/**
+	 * {@link #ANIMATION_DRIVER_ANIMATOR} skips the transition framework: one animator and a single
+	 * per-frame callback drive the background and every button, the scene capture on each toggle
+	 * grows with the button count otherwise. A running animation is settled before switching,
+	 * below Marshmallow a running transition can't be ended and the switch waits for its end.
+	 */
+	public void setAnimationDriver(@AnimationDriver int animationDriver) {
+		mPendingAnimationDriver = NO_PENDING_ANIMATION_DRIVER;
+		if (animationDriver == mAnimationDriver) {
+			return;
+		}
+		// The two drivers must never animate the same values
+		if (mMorphAnimator != null) {
+			mMorphAnimator.end();
+		}
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+			TransitionManager.endTransitions(this);
+		} else if (mState == STATE_OPENING || mState == STATE_CLOSING) {
+			mPendingAnimationDriver = animationDriver;
+			return;
+		}
+		mAnimationDriver = animationDriver;
+	}
+
+	@AnimationDriver
+	public int getAnimationDriver() {
+		return mPendingAnimationDriver != NO_PENDING_ANIMATION_DRIVER ? mPendingAnimationDriver : mAnimationDriver;
+	}
+
+	/**
+	 * Delay between each button scale animation, used by the animator driver (see
+	 * {@link #setAnimationDriver(int)}) with button views. Drawn buttons always scale together.
+	 */
+	public void setButtonsStaggerDelay(long staggerDelayMillis) {
+		mButtonsStaggerDelay = staggerDelayMillis;
+		if (mMorphAnimator != null) {
+			mMorphAnimator.setStaggerDelay(staggerDelayMillis);
+		}
+	}
+
+	/**
+	 * Adds android.os.Trace sections (constructor, menu updates, expand/collapse, measure and the
+	 * behavior updates) to systrace/Perfetto captures, off by default. Applies to all instances.
+	 */
+	public static void setTraceSectionsEnabled(boolean enabled) {
+		FabOptionsTrace.setEnabled(enabled);
+	}
+
+	/**
+	 * Reports frame count, slow/dropped frames and the longest frame of every open and close
+	 * animation, measured with Choreographer callbacks. Requires Jelly Bean, ignored below.
+	 */
+	public void setFrameMetricsListener(@Nullable FabOptionsFrameMetricsListener listener) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+			return;
+		}
+		if (mFrameTracker != null) {
+			mFrameTracker.stop(false);
+		}
+		mFrameTracker = listener != null ? new FabOptionsFrameTracker(listener) : null;
+	}
+
+	/**
+	 * Shares button views with other instances (e.g. RecyclerView items), buttons removed when the
+	 * menu changes are returned to the pool and new ones are taken from it before inflating
+	 */
+	public void setButtonPool(@Nullable FabOptionsButtonPool buttonPool) {
+		mButtonPool = buttonPool;
+		if (mButtonContainer != null) {
+			mButtonContainer.setButtonPool(buttonPool);
 		}
-		Log.d(TAG, "setButtonColor(): Couldn't find button with id " + buttonId);
-		return false;
 	}
 
 	public void setButtonsMenu(@MenuRes int menuId) {
@@ -184,22 +438,273 @@ public class FabOptions extends FrameLayout implements View.OnClickListener {
 	 * Deprecated use {@link #setButtonsMenu(int)}.
 	 */
 	@Deprecated
-	@SuppressLint("RestrictedApi")
 	public void setButtonsMenu(Context context, @MenuRes int menuId) {
-		mMenu = new MenuBuilder(context);
-		SupportMenuInflater menuInf = new SupportMenuInflater(context);
-		menuInf.inflate(menuId, mMenu);
-		addButtonsFromMenu(context, mMenu);
-		mSeparator = mButtonContainer.addSeparator(context);
-		animateButtons(false);
+		boolean traced = FabOptionsTrace.begin(FabOptionsTrace.SET_BUTTONS_MENU);
+		try {
+			if (mButtonContainer == null) {
+				// Lazy buttons, parsed and created on first open or once the main thread is idle
+				mPendingMenuId = menuId;
+				return;
+			}
+			mMenu = FabOptionsMenuCache.get(context, menuId);
+			if (updateButtonsFromMenu(context, mMenu)) {
+				initMorphTransitions();
+			}
+			animateButtons(mIsOpen);
+		} finally {
+			FabOptionsTrace.end(traced);
+		}
+	}
+
+	/**
+	 * Adds a single button after the current ones, see {@link #addButton(int, CharSequence, Drawable, int)}
+	 */
+	public void addButton(@IdRes int buttonId, CharSequence title, Drawable icon) {
+		ensureButtonContainer();
+		addButton(buttonId, title, icon, mButtonContainer.getButtonCount());
+	}
+
+	/**
+	 * Adds a single button at the given position without touching the others, while open only the
+	 * new button view is scaled in. Buttons added at runtime are replaced by the next buttons menu.
+	 */
+	public void addButton(@IdRes int buttonId, CharSequence title, Drawable icon, int index) {
+		ensureButtonContainer();
+		if (mButtonContainer.indexOfButton(buttonId) != -1) {
+			throw new IllegalArgumentException("A button with this id already exists");
+		}
+		mIconStates.remove(buttonId);
+		if (mButtonContainer.isDrawingButtons()) {
+			mButtonContainer.addDrawnButton(buttonId, title, icon, index);
+		} else {
+			AppCompatImageView button = mButtonContainer.addButton(getContext(), buttonId, title, icon, index);
+			button.setOnClickListener(this);
+			if (mState == STATE_OPEN) {
+				button.setScaleX(0);
+				button.setScaleY(0);
+				button.animate().scaleX(1).scaleY(1).setDuration(getButtonChangeDuration());
+			} else {
+				button.setScaleX(mIsOpen ? 1 : 0);
+				button.setScaleY(mIsOpen ? 1 : 0);
+			}
+		}
+		onButtonSetChanged();
+	}
+
+	/**
+	 * Removes a single button, while open only its view is scaled out
+	 *
+	 * @return false if there's no such button
+	 */
+	public boolean removeButton(@IdRes int buttonId) {
+		// Lazy buttons, the pending menu may hold this button
+		ensureButtonContainer();
+		boolean removed = mState == STATE_OPEN
+				? mButtonContainer.removeButtonAnimated(buttonId, getButtonChangeDuration())
+				: mButtonContainer.removeButton(buttonId);
+		if (removed) {
+			mIconStates.remove(buttonId);
+			onButtonSetChanged();
+		}
+		return removed;
+	}
+
+	/**
+	 * Replaces the id, title and icon of a button in place, no view is added or removed
+	 *
+	 * @return false if there's no such button
+	 */
+	public boolean replaceButton(@IdRes int buttonId, @IdRes int newButtonId, CharSequence title, Drawable icon) {
+		ensureButtonContainer();
+		if (newButtonId != buttonId && mButtonContainer.indexOfButton(newButtonId) != -1) {
+			throw new IllegalArgumentException("A button with this id already exists");
+		}
+		if (!mButtonContainer.replaceButton(buttonId, newButtonId, title, icon)) {
+			return false;
+		}
+		mIconStates.remove(buttonId);
+		mIconStates.remove(newButtonId);
+		return true;
+	}
+
+	/**
+	 * Hides (or shows back) a single button, no view is inflated or removed. The background and
+	 * separator follow the visible buttons in the next layout pass. Menu items start with their
+	 * android:visible state.
+	 *
+	 * @return false if there's no such button
+	 */
+	public boolean setButtonVisible(@IdRes int buttonId, boolean visible) {
+		ensureButtonContainer();
+		return mButtonContainer.setButtonVisible(buttonId, visible);
+	}
+
+	/**
+	 * Dims a single button and ignores its clicks while disabled. Menu items start with their
+	 * android:enabled state.
+	 *
+	 * @return false if there's no such button
+	 */
+	public boolean setButtonEnabled(@IdRes int buttonId, boolean enabled) {
+		ensureButtonContainer();
+		return mButtonContainer.setButtonEnabled(buttonId, enabled);
+	}
+
+	/**
+	 * Shows a numeric badge on a single button, 0 or less clears it. Badges are drawn by the
+	 * buttons container, no view is added and only the badge area is redrawn.
+	 *
+	 * @return false if there's no such button
+	 */
+	public boolean setButtonBadge(@IdRes int buttonId, int count) {
+		ensureButtonContainer();
+		return mButtonContainer.setButtonBadge(buttonId, count);
+	}
+
+	/**
+	 * Shows a dot indicator on a single button
+	 *
+	 * @return false if there's no such button
+	 */
+	public boolean setButtonBadgeDot(@IdRes int buttonId) {
+		ensureButtonContainer();
+		return mButtonContainer.setButtonBadgeDot(buttonId);
+	}
+
+	public boolean clearButtonBadge(@IdRes int buttonId) {
+		return mButtonContainer != null && mButtonContainer.clearButtonBadge(buttonId);
+	}
+
+	public void setBadgeColors(@ColorInt int backgroundColor, @ColorInt int textColor) {
+		ensureButtonContainer();
+		mButtonContainer.setBadgeColors(backgroundColor, textColor);
+	}
+
+	private long getButtonChangeDuration() {
+		return getResources().getInteger(android.R.integer.config_shortAnimTime);
+	}
+
+	/**
+	 * The transitions target each button view, they're rebuilt for the new set
+	 */
+	private void onButtonSetChanged() {
+		if (mOpenTransition != null) {
+			initMorphTransitions();
+		}
+	}
+
+	/**
+	 * Creates the background, buttons container and FAB as direct children, these are measured and
+	 * placed by {@link #onMeasure(int, int)}/{@link #onLayout(boolean, int, int, int, int)}.
+	 * With lazy buttons only the FAB is created here, see {@link #ensureButtonContainer()}
+	 */
+	private void initViews(Context context, boolean lazyButtons) {
+		boolean traced = FabOptionsTrace.begin(FabOptionsTrace.INIT_VIEWS);
+		try {
+			mMinContentHeight = getResources().getDimensionPixelSize(R.dimen.faboptions_layout_height);
+
+			mFab = new FloatingActionButton(context);
+			mFab.setId(R.id.faboptions_fab);
+			mFab.setOnClickListener(this);
+			addView(mFab, new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+
+			if (!lazyButtons) {
+				ensureButtonContainer();
+			}
+		} finally {
+			FabOptionsTrace.end(traced);
+		}
+	}
+
+	/**
+	 * Creates the background and buttons container (below the FAB) and applies the state set while
+	 * they didn't exist, including the pending buttons menu
+	 */
+	private void ensureButtonContainer() {
+		if (mButtonContainer != null) {
+			return;
+		}
+		Context context = getContext();
+		int buttonLayoutHeight = getResources().getDimensionPixelSize(R.dimen.faboptions_button_layout_height);
+
+		mBackground = new View(context);
+		mBackground.setId(R.id.faboptions_background);
+		addView(mBackground, 0, new LayoutParams(LayoutParams.MATCH_PARENT, buttonLayoutHeight));
+
+		mButtonContainer = new FabOptionsButtonContainer(context);
+		mButtonContainer.setId(R.id.faboptions_button_container);
+		mButtonContainer.setButtonPool(mButtonPool);
+		addView(mButtonContainer, 1, new LayoutParams(LayoutParams.WRAP_CONTENT, buttonLayoutHeight));
+
+		if (mHasBackgroundColor) {
+			applyBackgroundColor(context, mBackgroundColor);
+		}
+		if (mDrawnButtons) {
+			applyDrawnButtons(true);
+		}
+		if (mPendingMenuId != 0) {
+			int menuId = mPendingMenuId;
+			mPendingMenuId = 0;
+			setButtonsMenu(context, menuId);
+		}
+	}
+
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		if (mButtonContainer == null) {
+			if (mButtonsWarmUp == null) {
+				mButtonsWarmUp = new ButtonsWarmUp();
+			}
+			// Runs after the first frame, the buttons are then built once the main thread is idle
+			post(mButtonsWarmUp);
+		}
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		if (mButtonsWarmUp != null) {
+			removeCallbacks(mButtonsWarmUp);
+			Looper.myQueue().removeIdleHandler(mButtonsWarmUp);
+		}
+		if (mMorphAnimator != null) {
+			mMorphAnimator.end();
+		}
+		if (mState == STATE_OPENING || mState == STATE_CLOSING) {
+			// A transition that never started would leave the state unsettled
+			finishAnimation();
+		}
 	}
 
-	private void initViews(Context context) {
-		inflate(context, R.layout.faboptions_layout, this);
-		mBackground = findViewById(R.id.faboptions_background);
-		mButtonContainer = (FabOptionsButtonContainer) findViewById(R.id.faboptions_button_container);
-		mFab = (FloatingActionButton) findViewById(R.id.faboptions_fab);
-		mFab.setOnClickListener(this);
+	/**
+	 * Loads the open/close FAB icons once, these are reset and replayed on every toggle
+	 * so the expand/collapse path doesn't need to inflate any drawable
+	 */
+	private void initFabIcons(Context context) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			mOpenIcon = getResources().getDrawable(R.drawable.faboptions_ic_menu_animatable, null).mutate();
+			mCloseIcon = getResources().getDrawable(R.drawable.faboptions_ic_close_animatable, null).mutate();
+		} else {
+			mOpenIcon = AppCompatResources.getDrawable(context, R.drawable.faboptions_ic_close);
+			mCloseIcon = AppCompatResources.getDrawable(context, R.drawable.faboptions_ic_overflow);
+		}
+	}
+
+	/**
+	 * (Re)builds the open/close transitions for the current button set, these are reused on every
+	 * toggle and report back through a single listener. Only used from Lollipop, see runMorphAnimation
+	 */
+	private void initMorphTransitions() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			if (mMorphTransitionListener == null) {
+				mMorphTransitionListener = new MorphTransitionListener();
+			}
+			mOpenTransition = new OpenMorphTransition(mButtonContainer);
+			mOpenTransition.addListener(mMorphTransitionListener);
+			mCloseTransition = new CloseMorphTransition(mButtonContainer);
+			mCloseTransition.addListener(mMorphTransitionListener);
+		}
 	}
 
 	private void setInitialFabIcon() {
@@ -207,7 +712,22 @@ public class FabOptions extends FrameLayout implements View.OnClickListener {
 			VectorDrawable drawable = (VectorDrawable) getResources().getDrawable(faboptions_ic_overflow, null);
 			mFab.setImageDrawable(drawable);
 		} else {
-			mFab.setImageResource(R.drawable.faboptions_ic_overflow);
+			mFab.setImageDrawable(mCloseIcon);
+		}
+	}
+
+	private void morphFabIcon(Drawable icon) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			AnimatedVectorDrawable drawable = (AnimatedVectorDrawable) icon;
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+				drawable.reset();
+			} else {
+				drawable.stop();
+			}
+			mFab.setImageDrawable(drawable);
+			drawable.start();
+		} else {
+			mFab.setImageDrawable(icon);
 		}
 	}
 
@@ -232,54 +752,99 @@ public class FabOptions extends FrameLayout implements View.OnClickListener {
 	}
 
 	private void inflateButtonsFromAttrs(Context context, TypedArray attributes) {
+		if (attributes.getBoolean(R.styleable.FabOptions_drawn_buttons, false)) {
+			setDrawnButtonsEnabled(true);
+		}
 		if (attributes.hasValue(R.styleable.FabOptions_button_menu)) {
 			setButtonsMenu(context, attributes.getResourceId(R.styleable.FabOptions_button_menu, 0));
 		}
 	}
 
-	private void addButtonsFromMenu(Context context, Menu menu) {
-		for (int i = 0; i < menu.size(); i++) {
-			addButton(context, menu.getItem(i));
+	/**
+	 * Diffs the menu against the current buttons: buttons which id is still in the menu are kept
+	 * (only their changed title/icon are updated), the others are removed and new ones added.
+	 * All the changes happen before the next frame so they're resolved in a single layout pass.
+	 *
+	 * @return true if buttons were added, removed or moved
+	 */
+	private boolean updateButtonsFromMenu(Context context, FabOptionsMenuCache.ParsedMenu menu) {
+		boolean traced = FabOptionsTrace.begin(FabOptionsTrace.UPDATE_BUTTONS_FROM_MENU);
+		try {
+			boolean buttonSetChanged = false;
+			for (int i = mButtonContainer.getButtonCount() - 1; i >= 0; i--) {
+				int buttonId = mButtonContainer.getButtonId(i);
+				if (menu.indexOfItem(buttonId) == -1) {
+					mButtonContainer.removeButtonAt(i);
+					mIconStates.remove(buttonId);
+					buttonSetChanged = true;
+				}
+			}
+
+			for (int position = 0; position < menu.size(); position++) {
+				int index = mButtonContainer.indexOfButton(menu.getItemId(position));
+				if (index == -1) {
+					addButton(context, menu, position);
+					buttonSetChanged = true;
+				} else {
+					if (index != position) {
+						mButtonContainer.moveButton(index, position);
+						buttonSetChanged = true;
+					}
+					updateButton(menu, position);
+				}
+			}
+			return buttonSetChanged;
+		} finally {
+			FabOptionsTrace.end(traced);
 		}
 	}
 
-	private void addButton(Context context, MenuItem menuItem) {
-		AppCompatImageView button = mButtonContainer.addButton(context, menuItem.getItemId(),
-				menuItem.getTitle(), menuItem.getIcon());
-		button.setOnClickListener(this);
+	private void addButton(Context context, FabOptionsMenuCache.ParsedMenu menu, int position) {
+		int buttonId = menu.getItemId(position);
+		Drawable icon = menu.newIcon(position, getResources());
+		mIconStates.put(buttonId, menu.getIconState(position));
+		if (mButtonContainer.isDrawingButtons()) {
+			mButtonContainer.addDrawnButton(buttonId, menu.getTitle(position), icon, position);
+		} else {
+			AppCompatImageView button = mButtonContainer.addButton(context, buttonId,
+					menu.getTitle(position), icon, position);
+			button.setOnClickListener(this);
+		}
+		applyMenuItemState(menu, position);
 	}
 
-	private boolean styleButton(int buttonIndex, @ColorRes int color) {
-		if (buttonIndex >= (mButtonContainer.getChildCount() / 2)) {
-			// Hacky way to deal with the separator view index
-			buttonIndex++;
-		}
+	private void applyMenuItemState(FabOptionsMenuCache.ParsedMenu menu, int position) {
+		int buttonId = menu.getItemId(position);
+		mButtonContainer.setButtonVisible(buttonId, menu.isVisible(position));
+		mButtonContainer.setButtonEnabled(buttonId, menu.isEnabled(position));
+	}
 
-		if (buttonIndex >= mButtonContainer.getChildCount()) {
-			Log.e(TAG, "Button at " + buttonIndex + " is null (index out of bounds)");
-			return false;
-		}
+	private void updateButton(FabOptionsMenuCache.ParsedMenu menu, int position) {
+		int buttonId = menu.getItemId(position);
+		mButtonContainer.setButtonTitle(buttonId, menu.getTitle(position));
 
-		AppCompatImageView imageView = (AppCompatImageView) mButtonContainer.getChildAt(buttonIndex);
-		imageView.setColorFilter(ContextCompat.getColor(getContext(), color));
-		return true;
+		Drawable.ConstantState iconState = menu.getIconState(position);
+		// Same resource (and configuration) resolves to the same constant state
+		if (iconState == null || iconState != mIconStates.get(buttonId)) {
+			mIconStates.put(buttonId, iconState);
+			mButtonContainer.setButtonIcon(buttonId, menu.newIcon(position, getResources()));
+		}
+		applyMenuItemState(menu, position);
 	}
 
 	@Override
 	public void onClick(View v) {
-		if (!mIsAnimating) {
-			mIsAnimating = true;
-			if (v.getId() == R.id.faboptions_fab) {
-				if (mIsOpen) {
-					collapse(null);
-				} else {
-					expand(null);
-				}
+		// Taps are never dropped while animating, a running animation is reversed instead
+		if (v.getId() == R.id.faboptions_fab) {
+			if (mIsOpen) {
+				collapse(null);
 			} else {
-				if (mClickListener != null && mIsOpen) {
-					mClickListener.onClick(v);
-					collapse(null);
-				}
+				expand(null);
+			}
+		} else {
+			if (mClickListener != null && mIsOpen) {
+				mClickListener.onClick(v);
+				collapse(null);
 			}
 		}
 	}
@@ -290,146 +855,329 @@ public class FabOptions extends FrameLayout implements View.OnClickListener {
 	}
 
 	private void expand(@Nullable final FabOptionsAnimationStateListener listener) {
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-			AnimatedVectorDrawable drawable = (AnimatedVectorDrawable) getResources()
-					.getDrawable(R.drawable.faboptions_ic_menu_animatable, null);
-			mFab.setImageDrawable(drawable);
-			drawable.start();
-		} else {
-			mFab.setImageResource(R.drawable.faboptions_ic_close);
-		}
-
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-			final TransitionSet transitionSet = new OpenMorphTransition(mButtonContainer);
-			transitionSet.addListener(new Transition.TransitionListener() {
-				@Override
-				public void onTransitionStart(final Transition transition) {
-				}
-
-				@Override
-				public void onTransitionEnd(final Transition transition) {
-					if (listener != null) {
-						listener.onOpenAnimationEnd();
-					}
-					mIsAnimating = false;
-				}
-
-				@Override
-				public void onTransitionCancel(final Transition transition) {
-				}
-
-				@Override
-				public void onTransitionPause(final Transition transition) {
+		boolean traced = FabOptionsTrace.begin(FabOptionsTrace.EXPAND);
+		try {
+			if (mState == STATE_OPEN) {
+				if (listener != null) {
+					listener.onOpenAnimationEnd();
 				}
+				return;
+			}
+			if (mState == STATE_CLOSING) {
+				interruptAnimation(true);
+			}
+			ensureButtonContainer();
+			morphFabIcon(mOpenIcon);
+			mState = STATE_OPENING;
+			mIsOpen = true;
+			mAnimationStateListener = listener;
+			runMorphAnimation(true);
+		} finally {
+			FabOptionsTrace.end(traced);
+		}
+	}
 
-				@Override
-				public void onTransitionResume(final Transition transition) {
+	private void collapse(@Nullable final FabOptionsAnimationStateListener listener) {
+		boolean traced = FabOptionsTrace.begin(FabOptionsTrace.COLLAPSE);
+		try {
+			if (mState == STATE_CLOSED) {
+				if (listener != null) {
+					listener.onCloseAnimationEnd();
 				}
-			});
-
-			TransitionManager.beginDelayedTransition(this, transitionSet);
+				return;
+			}
+			if (mState == STATE_OPENING) {
+				interruptAnimation(true);
+			}
+			ensureButtonContainer();
+			morphFabIcon(mCloseIcon);
+			mState = STATE_CLOSING;
+			mIsOpen = false;
+			mAnimationStateListener = listener;
+			runMorphAnimation(false);
+		} finally {
+			FabOptionsTrace.end(traced);
 		}
-		animateBackground(true);
-		animateButtons(true);
-
-		mIsOpen = true;
 	}
 
-	private void collapse(@Nullable final FabOptionsAnimationStateListener listener) {
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-			AnimatedVectorDrawable drawable = (AnimatedVectorDrawable) getResources().getDrawable(R.drawable.faboptions_ic_close_animatable, null);
-			mFab.setImageDrawable(drawable);
-			drawable.start();
+	/**
+	 * Both drivers start from the values currently on screen, a reversed toggle continues from its
+	 * progress. Below Lollipop the transitions can't scale the buttons, the animator does it all.
+	 */
+	private void runMorphAnimation(boolean open) {
+		cancelButtonAnimations();
+		if (!ViewCompat.isLaidOut(this)) {
+			// Nothing on screen yet, a transition would never run and the state would never settle
+			animateBackground(open);
+			animateButtons(open);
+			finishAnimation();
+			return;
+		}
+		mButtonContainer.setButtonsAnimating(true);
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+				&& mAnimationDriver == ANIMATION_DRIVER_TRANSITIONS) {
+			startFrameTracking(open);
+			if (mOpenTransition == null) {
+				initMorphTransitions();
+			}
+			promoteButtonsToHardwareLayers();
+			TransitionManager.beginDelayedTransition(this, open ? mOpenTransition : mCloseTransition);
+			animateBackground(open);
+			animateButtons(open);
 		} else {
-			mFab.setImageResource(R.drawable.faboptions_ic_overflow);
+			if (mMorphAnimator == null) {
+				mMorphAnimator = new FabOptionsAnimator(mBackground, mButtonContainer,
+						new FabOptionsAnimator.OnAnimationEndListener() {
+							@Override
+							public void onAnimationEnd() {
+								finishAnimation();
+							}
+						});
+				mMorphAnimator.setStaggerDelay(mButtonsStaggerDelay);
+			}
+			startFrameTracking(open);
+			promoteButtonsToHardwareLayers();
+			mMorphAnimator.start(open);
 		}
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-			final TransitionSet transitionSet = new CloseMorphTransition(mButtonContainer);
-			transitionSet.addListener(new Transition.TransitionListener() {
-				@Override
-				public void onTransitionStart(final Transition transition) {
-				}
+	}
 
-				@Override
-				public void onTransitionEnd(final Transition transition) {
-					if (listener != null) {
-						listener.onCloseAnimationEnd();
-					}
-					mIsAnimating = false;
-				}
+	private void startFrameTracking(boolean open) {
+		if (mFrameTracker != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			mFrameTracker.start(open, Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? getDisplay() : null);
+		}
+	}
 
-				@Override
-				public void onTransitionCancel(final Transition transition) {
-				}
+	private void stopFrameTracking(boolean completed) {
+		if (mFrameTracker != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			mFrameTracker.stop(completed);
+		}
+	}
 
-				@Override
-				public void onTransitionPause(final Transition transition) {
-				}
+	private void finishAnimation() {
+		FabOptionsAnimationStateListener listener = mAnimationStateListener;
+		mAnimationStateListener = null;
+		mRunningTransition = null;
+		mState = mIsOpen ? STATE_OPEN : STATE_CLOSED;
+		applyPendingAnimationDriver();
+		releaseHardwareLayers();
+		if (mButtonContainer != null) {
+			mButtonContainer.setButtonsAnimating(false);
+		}
+		stopFrameTracking(true);
+		if (listener != null) {
+			if (mIsOpen) {
+				listener.onOpenAnimationEnd();
+			} else {
+				listener.onCloseAnimationEnd();
+			}
+		}
+	}
 
-				@Override
-				public void onTransitionResume(final Transition transition) {
-				}
-			});
+	/**
+	 * A driver switch requested while a transition couldn't be ended, see setAnimationDriver
+	 */
+	private void applyPendingAnimationDriver() {
+		if (mPendingAnimationDriver != NO_PENDING_ANIMATION_DRIVER) {
+			mAnimationDriver = mPendingAnimationDriver;
+			mPendingAnimationDriver = NO_PENDING_ANIMATION_DRIVER;
+		}
+	}
 
-			TransitionManager.beginDelayedTransition(this, transitionSet);
+	/**
+	 * The running transition is superseded, its late end callback must not settle the new state
+	 */
+	private void interruptAnimation(boolean reversed) {
+		FabOptionsAnimationStateListener listener = mAnimationStateListener;
+		mAnimationStateListener = null;
+		mRunningTransition = null;
+		stopFrameTracking(false);
+		if (listener instanceof FabOptionsAnimationCancelListener) {
+			if (mState == STATE_OPENING) {
+				((FabOptionsAnimationCancelListener) listener).onOpenAnimationCancel(reversed);
+			} else {
+				((FabOptionsAnimationCancelListener) listener).onCloseAnimationCancel(reversed);
+			}
 		}
-		animateButtons(false);
-		animateBackground(false);
-		mIsOpen = false;
 	}
 
 	@Override
 	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-		super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-		if (mSeparator != null) {
-			ViewGroup.LayoutParams separatorLayoutParams = mSeparator.getLayoutParams();
-			separatorLayoutParams.width = mFab.getMeasuredWidth();
-			separatorLayoutParams.height = mFab.getMeasuredHeight();
-			mSeparator.setLayoutParams(separatorLayoutParams);
+		boolean traced = FabOptionsTrace.begin(FabOptionsTrace.MEASURE);
+		try {
+			measureChild(mFab, widthMeasureSpec, heightMeasureSpec);
+			int containerWidth = 0;
+			int containerHeight = 0;
+			if (mButtonContainer != null) {
+				// The gap between the buttons follows the FAB size, no need for another layout pass
+				mButtonContainer.setSeparatorWidth(mFab.getMeasuredWidth());
+				measureChild(mButtonContainer, widthMeasureSpec, heightMeasureSpec);
+				containerWidth = mButtonContainer.getMeasuredWidth();
+				containerHeight = mButtonContainer.getMeasuredHeight();
+				mBackground.measure(
+						MeasureSpec.makeMeasureSpec(containerWidth, MeasureSpec.EXACTLY),
+						MeasureSpec.makeMeasureSpec(mBackground.getLayoutParams().height, MeasureSpec.EXACTLY));
+			}
+
+			int width = Math.max(mFab.getMeasuredWidth(), containerWidth) + getPaddingLeft() + getPaddingRight();
+			int height = Math.max(mMinContentHeight, Math.max(mFab.getMeasuredHeight(), containerHeight))
+					+ getPaddingTop() + getPaddingBottom();
+			setMeasuredDimension(resolveSize(Math.max(width, getSuggestedMinimumWidth()), widthMeasureSpec),
+					resolveSize(Math.max(height, getSuggestedMinimumHeight()), heightMeasureSpec));
+		} finally {
+			FabOptionsTrace.end(traced);
 		}
 	}
 
-	private void animateBackground(final boolean isOpen) {
-		ViewGroup.LayoutParams backgroundLayoutParams = mBackground.getLayoutParams();
-		backgroundLayoutParams.width = isOpen ? mButtonContainer.getMeasuredWidth() : NO_DIMENSION;
-		mBackground.setLayoutParams(backgroundLayoutParams);
+	@Override
+	protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+		int availableWidth = right - left - getPaddingLeft() - getPaddingRight();
+		int availableHeight = bottom - top - getPaddingTop() - getPaddingBottom();
+		for (int i = 0; i < getChildCount(); i++) {
+			View child = getChildAt(i);
+			if (child.getVisibility() == GONE) {
+				continue;
+			}
+			int childLeft = getPaddingLeft() + (availableWidth - child.getMeasuredWidth()) / 2;
+			int childTop = getPaddingTop() + (availableHeight - child.getMeasuredHeight()) / 2;
+			child.layout(childLeft, childTop, childLeft + child.getMeasuredWidth(), childTop + child.getMeasuredHeight());
+		}
 	}
 
-	private void openCompatAnimation() {
-		ObjectAnimator anim = ObjectAnimator.ofFloat(mBackground, "scaleX", 1.0f);
-		anim.setDuration(30000); // duration 3 seconds
-		anim.start();
+	@Override
+	public boolean shouldDelayChildPressedState() {
+		return false;
 	}
 
+	/**
+	 * The background view always keeps its final size, the shape is revealed from the center
+	 * through the drawable level so opening/closing never requests a layout pass
+	 */
+	private Drawable createRevealDrawable(Drawable backgroundShape) {
+		ScaleDrawable revealDrawable = new ScaleDrawable(backgroundShape, Gravity.CENTER, 1f, -1f);
+		revealDrawable.setLevel(mIsOpen ? BACKGROUND_REVEALED_LEVEL : BACKGROUND_HIDDEN_LEVEL);
+		return revealDrawable;
+	}
 
-	private void closeCompatAnimation() {
-		ObjectAnimator anim = ObjectAnimator.ofFloat(mBackground, "scaleX", 0.0f);
-		anim.setDuration(3000);
-		anim.start();
-		animateButtons(false);
+	private void animateBackground(final boolean isOpen) {
+		Drawable background = mBackground.getBackground();
+		if (background != null) {
+			background.setLevel(isOpen ? BACKGROUND_REVEALED_LEVEL : BACKGROUND_HIDDEN_LEVEL);
+		}
+	}
+
+	/**
+	 * Only the button views are promoted: their content is static while their scale animates, so
+	 * each frame just composites the layer. The background (reveal level) and drawn buttons (icon
+	 * scale) redraw their content on every frame, a layer would be re-rendered each time.
+	 */
+	private void promoteButtonsToHardwareLayers() {
+		if (!mHardwareLayersEnabled || !isHardwareAccelerated() || mButtonContainer.isDrawingButtons()) {
+			return;
+		}
+		for (int i = 0; i < mButtonContainer.getChildCount(); i++) {
+			View button = mButtonContainer.getChildAt(i);
+			if (button.getLayerType() == LAYER_TYPE_NONE) {
+				button.setLayerType(LAYER_TYPE_HARDWARE, null);
+				mHardwareLayerCount++;
+			}
+		}
+		if (mHardwareLayerCount > 0 && Log.isLoggable(TAG, Log.DEBUG)) {
+			mHardwareLayersPromotedAt = SystemClock.uptimeMillis();
+			Log.d(TAG, "Promoted " + mHardwareLayerCount + " buttons to hardware layers");
+		}
+	}
+
+	private void releaseHardwareLayers() {
+		if (mHardwareLayerCount == 0) {
+			return;
+		}
+		for (int i = 0; i < mButtonContainer.getChildCount(); i++) {
+			View button = mButtonContainer.getChildAt(i);
+			if (button.getLayerType() == LAYER_TYPE_HARDWARE) {
+				button.setLayerType(LAYER_TYPE_NONE, null);
+			}
+		}
+		if (Log.isLoggable(TAG, Log.DEBUG)) {
+			Log.d(TAG, "Released " + mHardwareLayerCount + " hardware layers after "
+					+ (SystemClock.uptimeMillis() - mHardwareLayersPromotedAt) + "ms");
+		}
+		mHardwareLayerCount = 0;
 	}
 
 	private void animateButtons(boolean isOpen) {
+		if (mButtonContainer.isDrawingButtons()) {
+			mButtonContainer.setIconScale(isOpen ? 1 : 0);
+			return;
+		}
+		cancelButtonAnimations();
 		for (int i = 0; i < mButtonContainer.getChildCount(); i++) {
 			mButtonContainer.getChildAt(i).setScaleX(isOpen ? 1 : 0);
 			mButtonContainer.getChildAt(i).setScaleY(isOpen ? 1 : 0);
 		}
 	}
 
+	/**
+	 * A button added while open scales in on its own, it must not finish at scale 1 once the
+	 * morph or a menu update has set another scale
+	 */
+	private void cancelButtonAnimations() {
+		if (mButtonContainer.isDrawingButtons()) {
+			return;
+		}
+		for (int i = 0; i < mButtonContainer.getChildCount(); i++) {
+			mButtonContainer.getChildAt(i).animate().cancel();
+		}
+	}
+
+	@RequiresApi(api = Build.VERSION_CODES.KITKAT)
+	private class MorphTransitionListener implements Transition.TransitionListener {
+		@Override
+		public void onTransitionStart(final Transition transition) {
+			// TransitionManager runs a clone, the first one started after a request is the current one
+			if (mRunningTransition == null && (mState == STATE_OPENING || mState == STATE_CLOSING)) {
+				mRunningTransition = transition;
+			}
+		}
+
+		@Override
+		public void onTransitionEnd(final Transition transition) {
+			if (transition == mRunningTransition) {
+				finishAnimation();
+			}
+		}
+
+		@Override
+		public void onTransitionCancel(final Transition transition) {
+			if (transition == mRunningTransition) {
+				// The end values were already applied, only the listener needs to know
+				interruptAnimation(false);
+				mState = mIsOpen ? STATE_OPEN : STATE_CLOSED;
+				applyPendingAnimationDriver();
+				releaseHardwareLayers();
+				mButtonContainer.setButtonsAnimating(false);
+			}
+		}
+
+		@Override
+		public void onTransitionPause(final Transition transition) {
+		}
+
+		@Override
+		public void onTransitionResume(final Transition transition) {
+		}
+	}
+
 	@RequiresApi(api = Build.VERSION_CODES.KITKAT)
 	private class OpenMorphTransition extends TransitionSet {
-		OpenMorphTransition(ViewGroup viewGroup) {
+		OpenMorphTransition(FabOptionsButtonContainer buttonContainer) {
 
-			ChangeBounds changeBound = new ChangeBounds();
-			changeBound.excludeChildren(R.id.faboptions_button_container, true);
-			addTransition(changeBound);
+			addTransition(new RevealBackground());
 
 			if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP) {
-				ChangeTransform changeTransform = new ChangeTransform();
-				for (int i = 0; i < viewGroup.getChildCount(); i++) {
-					changeTransform.addTarget(viewGroup.getChildAt(i));
+				Transition buttonsTransition = createButtonsTransition(buttonContainer);
+				if (buttonsTransition != null) {
+					addTransition(buttonsTransition);
 				}
-				addTransition(changeTransform);
 			}
 
 			setOrdering(TransitionSet.ORDERING_SEQUENTIAL);
@@ -438,22 +1186,164 @@ public class FabOptions extends FrameLayout implements View.OnClickListener {
 
 	@RequiresApi(api = Build.VERSION_CODES.KITKAT)
 	private class CloseMorphTransition extends TransitionSet {
-		CloseMorphTransition(ViewGroup viewGroup) {
-
-			ChangeBounds changeBound = new ChangeBounds();
-			changeBound.excludeChildren(R.id.faboptions_button_container, true);
+		CloseMorphTransition(FabOptionsButtonContainer buttonContainer) {
 
 			if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP) {
-				ChangeTransform changeTransform = new ChangeTransform();
-				for (int i = 0; i < viewGroup.getChildCount(); i++) {
-					changeTransform.addTarget(viewGroup.getChildAt(i));
+				Transition buttonsTransition = createButtonsTransition(buttonContainer);
+				if (buttonsTransition != null) {
+					buttonsTransition.setDuration(CLOSE_MORPH_TRANSFORM_DURATION);
+					addTransition(buttonsTransition);
 				}
-				changeTransform.setDuration(CLOSE_MORPH_TRANSFORM_DURATION);
-				addTransition(changeTransform);
 			}
 
-			addTransition(changeBound);
+			addTransition(new RevealBackground());
 			setOrdering(TransitionSet.ORDERING_TOGETHER);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Scales each button view, or the drawn icons when the container draws the buttons itself.
+	 * Returns null without buttons, a ChangeTransform without targets would capture every view.
+	 */
+	@Nullable
+	@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+	private static Transition createButtonsTransition(FabOptionsButtonContainer buttonContainer) {
+		if (buttonContainer.isDrawingButtons()) {
+			return new ChangeIconScale();
+		}
+		if (buttonContainer.getChildCount() == 0) {
+			return null;
+		}
+		ChangeTransform changeTransform = new ChangeTransform();
+		for (int i = 0; i < buttonContainer.getChildCount(); i++) {
+			changeTransform.addTarget(buttonContainer.getChildAt(i));
+		}
+		return changeTransform;
+	}
+
+	/**
+	 * Animates the background reveal drawable level, only the drawable is invalidated on each frame
+	 */
+	@RequiresApi(api = Build.VERSION_CODES.KITKAT)
+	private static class RevealBackground extends Transition {
+		private static final String PROPNAME_LEVEL = "faboptions:revealBackground:level";
+
+		RevealBackground() {
+			addTarget(R.id.faboptions_background);
+		}
+
+		@Override
+		public void captureStartValues(TransitionValues transitionValues) {
+			captureValues(transitionValues);
+		}
+
+		@Override
+		public void captureEndValues(TransitionValues transitionValues) {
+			captureValues(transitionValues);
+		}
+
+		private void captureValues(TransitionValues transitionValues) {
+			Drawable background = transitionValues.view.getBackground();
+			if (background != null) {
+				transitionValues.values.put(PROPNAME_LEVEL, background.getLevel());
+			}
+		}
+
+		@Override
+		public Animator createAnimator(ViewGroup sceneRoot, TransitionValues startValues, TransitionValues endValues) {
+			if (startValues == null || endValues == null) {
+				return null;
+			}
+			Integer startLevel = (Integer) startValues.values.get(PROPNAME_LEVEL);
+			Integer endLevel = (Integer) endValues.values.get(PROPNAME_LEVEL);
+			final Drawable background = endValues.view.getBackground();
+			if (startLevel == null || endLevel == null || background == null || startLevel.equals(endLevel)) {
+				return null;
+			}
+			final int fromLevel = startLevel;
+			final int toLevel = endLevel;
+			background.setLevel(fromLevel);
+			ValueAnimator animator = ValueAnimator.ofFloat(0f, 1f);
+			animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+				@Override
+				public void onAnimationUpdate(ValueAnimator animation) {
+					// setLevel returns a boolean, a "level" property would go through reflection and box
+					background.setLevel(fromLevel + Math.round((toLevel - fromLevel) * animation.getAnimatedFraction()));
+				}
+			});
+			return animator;
+		}
+	}
+
+	/**
+	 * Animates the drawn buttons icon scale, the counterpart of ChangeTransform for drawn buttons
+	 */
+	@RequiresApi(api = Build.VERSION_CODES.KITKAT)
+	private static class ChangeIconScale extends Transition {
+		private static final String PROPNAME_SCALE = "faboptions:changeIconScale:scale";
+
+		ChangeIconScale() {
+			addTarget(R.id.faboptions_button_container);
+		}
+
+		@Override
+		public void captureStartValues(TransitionValues transitionValues) {
+			captureValues(transitionValues);
+		}
+
+		@Override
+		public void captureEndValues(TransitionValues transitionValues) {
+			captureValues(transitionValues);
+		}
+
+		private void captureValues(TransitionValues transitionValues) {
+			if (transitionValues.view instanceof FabOptionsButtonContainer) {
+				transitionValues.values.put(PROPNAME_SCALE,
+						((FabOptionsButtonContainer) transitionValues.view).getIconScale());
+			}
+		}
+
+		@Override
+		public Animator createAnimator(ViewGroup sceneRoot, TransitionValues startValues, TransitionValues endValues) {
+			if (startValues == null || endValues == null) {
+				return null;
+			}
+			Float startScale = (Float) startValues.values.get(PROPNAME_SCALE);
+			Float endScale = (Float) endValues.values.get(PROPNAME_SCALE);
+			if (startScale == null || endScale == null || startScale.equals(endScale)) {
+				return null;
+			}
+			final FabOptionsButtonContainer buttonContainer = (FabOptionsButtonContainer) endValues.view;
+			final float fromScale = startScale;
+			final float toScale = endScale;
+			buttonContainer.setIconScale(fromScale);
+			ValueAnimator animator = ValueAnimator.ofFloat(0f, 1f);
+			animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+				@Override
+				public void onAnimationUpdate(ValueAnimator animation) {
+					// Reads the fraction, a Float property or animated value would be boxed on every frame
+					buttonContainer.setIconScale(fromScale + (toScale - fromScale) * animation.getAnimatedFraction());
+				}
+			});
+			return animator;
+		}
+	}
+
+	/**
+	 * Builds the lazy buttons once the main thread is idle after the first frame
+	 */
+	private class ButtonsWarmUp implements Runnable, MessageQueue.IdleHandler {
+		@Override
+		public void run() {
+			if (mButtonContainer == null) {
+				Looper.myQueue().addIdleHandler(this);
+			}
+		}
+
+		@Override
+		public boolean queueIdle() {
+			ensureButtonContainer();
+			return false;
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package com.joaquimley.faboptions;
+
+/**
+ * FabOptions exposed listener, also told when the animation it waits for does not complete
+ */
+
+public interface FabOptionsAnimationCancelListener extends FabOptionsAnimationStateListener {
+	/**
+	 * @param reversed true when a close request took over from the current progress
+	 */
+	void onOpenAnimationCancel(boolean reversed);
+
+	/**
+	 * @param reversed true when an open request took over from the current progress
+	 */
+	void onCloseAnimationCancel(boolean reversed);
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) Joaquim Ley 2016. All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joaquimley.faboptions;
+
+import android.animation.Animator;
+import android.animation.ValueAnimator;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+import android.view.animation.LinearInterpolator;
+
+/**
+ * Drives the open/close morph with a single reused ValueAnimator, one per-frame callback updates
+ * the background reveal and every button scale without capturing a transition scene. Used below
+ * Lollipop, where the transition framework can't animate the buttons, and on every API level with
+ * {@link FabOptions#ANIMATION_DRIVER_ANIMATOR}.
+ * <p>
+ * Follows the same choreography as the morph transitions: opening reveals the background and then
+ * scales the buttons in, closing scales the buttons out quickly while the background hides. Button
+ * views can be staggered, drawn buttons share a single scale. Every run starts from the values
+ * currently on screen, so a reversed toggle continues from its progress.
+ */
+final class FabOptionsAnimator implements ValueAnimator.AnimatorUpdateListener, Animator.AnimatorListener {
+
+    interface OnAnimationEndListener {
+        void onAnimationEnd();
+    }
+
+    // Default duration of the transitions (and animators) the morph transitions are built from
+    private static final long SEGMENT_DURATION = 300;
+
+    private final View mBackground;
+    private final FabOptionsButtonContainer mButtonContainer;
+    private final OnAnimationEndListener mEndListener;
+    private final ValueAnimator mAnimator;
+
+    private boolean mOpening;
+    private boolean mSuperseding;
+    private long mStaggerDelay;
+    private long mRunStaggerDelay;
+    private int mRunStaggeredButtons;
+    private int mStartLevel;
+    private float mStartScale;
+    private float[] mStartScales = new float[0];
+    private int mStartScaleCount;
+
+    FabOptionsAnimator(View background, FabOptionsButtonContainer buttonContainer,
+                       OnAnimationEndListener endListener) {
+        mBackground = background;
+        mButtonContainer = buttonContainer;
+        mEndListener = endListener;
+        mAnimator = ValueAnimator.ofFloat(0f, 1f);
+        // Each segment applies its own easing, see segmentFraction
+        mAnimator.setInterpolator(new LinearInterpolator());
+        mAnimator.addUpdateListener(this);
+        mAnimator.addListener(this);
+    }
+
+    /**
+     * Delay between consecutive button views, applied from the next run
+     */
+    void setStaggerDelay(long staggerDelay) {
+        mStaggerDelay = Math.max(0, staggerDelay);
+    }
+
+    void start(boolean open) {
+        cancel();
+        mOpening = open;
+        Drawable background = mBackground.getBackground();
+        mStartLevel = background != null ? background.getLevel() : 0;
+        captureButtonScales();
+
+        // Fixed for the whole run, the duration must cover the last staggered button
+        mRunStaggerDelay = mButtonContainer.isDrawingButtons() ? 0 : mStaggerDelay;
+        mRunStaggeredButtons = getVisibleButtonCount();
+        long staggerDuration = mRunStaggerDelay * Math.max(0, mRunStaggeredButtons - 1);
+        mAnimator.setDuration(open ? 2 * SEGMENT_DURATION + staggerDuration
+                : Math.max(SEGMENT_DURATION, FabOptions.CLOSE_MORPH_TRANSFORM_DURATION + staggerDuration));
+        mAnimator.start();
+    }
+
+    /**
+     * Stops the current run where it is without notifying the end listener
+     */
+    void cancel() {
+        if (mAnimator.isStarted()) {
+            // Superseded by another run, which picks up the current values
+            mSuperseding = true;
+            mAnimator.cancel();
+            mSuperseding = false;
+        }
+    }
+
+    /**
+     * Jumps to the end values, the end listener is notified as for a completed run
+     */
+    void end() {
+        if (mAnimator.isStarted()) {
+            mAnimator.end();
+        }
+    }
+
+    @Override
+    public void onAnimationUpdate(ValueAnimator animation) {
+        long playTime = (long) (animation.getAnimatedFraction() * animation.getDuration());
+        float revealFraction = segmentFraction(playTime, 0, SEGMENT_DURATION);
+        int endLevel = mOpening ? FabOptions.BACKGROUND_REVEALED_LEVEL : FabOptions.BACKGROUND_HIDDEN_LEVEL;
+        Drawable background = mBackground.getBackground();
+        if (background != null) {
+            background.setLevel(mStartLevel + Math.round((endLevel - mStartLevel) * revealFraction));
+        }
+
+        long buttonsDelay = mOpening ? SEGMENT_DURATION : 0;
+        long buttonsDuration = mOpening ? SEGMENT_DURATION : FabOptions.CLOSE_MORPH_TRANSFORM_DURATION;
+        float endScale = mOpening ? 1 : 0;
+        if (mButtonContainer.isDrawingButtons()) {
+            float buttonsFraction = segmentFraction(playTime, buttonsDelay, buttonsDuration);
+            mButtonContainer.setIconScale(mStartScale + (endScale - mStartScale) * buttonsFraction);
+            return;
+        }
+        int count = Math.min(mButtonContainer.getChildCount(), mStartScaleCount);
+        int lastPosition = Math.max(0, mRunStaggeredButtons - 1);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            View button = mButtonContainer.getChildAt(i);
+            // Hidden buttons take no stagger slot, buttons shown mid-run share the last one
+            long staggerOffset = Math.min(position, lastPosition) * mRunStaggerDelay;
+            if (button.getVisibility() != View.GONE) {
+                position++;
+            }
+            float buttonFraction = segmentFraction(playTime, buttonsDelay + staggerOffset, buttonsDuration);
+            float scale = mStartScales[i] + (endScale - mStartScales[i]) * buttonFraction;
+            button.setScaleX(scale);
+            button.setScaleY(scale);
+        }
+    }
+
+    /**
+     * Same curve as the AccelerateDecelerateInterpolator the transitions default to
+     */
+    private static float segmentFraction(long playTime, long delay, long duration) {
+        float fraction = Math.max(0f, Math.min(1f, (playTime - delay) / (float) duration));
+        return (float) (Math.cos((fraction + 1) * Math.PI) / 2.0f) + 0.5f;
+    }
+
+    /**
+     * Drawn buttons share a single scale, only visible button views are staggered
+     */
+    private int getVisibleButtonCount() {
+        if (mButtonContainer.isDrawingButtons()) {
+            return 0;
+        }
+        int visibleButtons = 0;
+        for (int i = 0; i < mButtonContainer.getChildCount(); i++) {
+            if (mButtonContainer.getChildAt(i).getVisibility() != View.GONE) {
+                visibleButtons++;
+            }
+        }
+        return visibleButtons;
+    }
+
+    /**
+     * Staggered buttons can be at different scales when a run is reversed, each one is kept
+     */
+    private void captureButtonScales() {
+        if (mButtonContainer.isDrawingButtons()) {
+            mStartScale = mButtonContainer.getIconScale();
+            return;
+        }
+        int count = mButtonContainer.getChildCount();
+        if (mStartScales.length < count) {
+            mStartScales = new float[count];
+        }
+        for (int i = 0; i < count; i++) {
+            mStartScales[i] = mButtonContainer.getChildAt(i).getScaleX();
+        }
+        mStartScaleCount = count;
+    }
+
+    @Override
+    public void onAnimationStart(Animator animation) {
+    }
+
+    @Override
+    public void onAnimationEnd(Animator animation) {
+        if (!mSuperseding) {
+            mEndListener.onAnimationEnd();
+        }
+    }
+
+    @Override
+    public void onAnimationCancel(Animator animation) {
+    }
+
+    @Override
+    public void onAnimationRepeat(Animator animation) {
+    }
+}
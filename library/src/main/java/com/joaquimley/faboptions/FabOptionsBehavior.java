@@ -16,32 +16,76 @@
 
 package com.joaquimley.faboptions;
 
+import android.support.annotation.Nullable;
+import android.support.design.widget.BottomSheetBehavior;
 import android.support.design.widget.CoordinatorLayout;
 import android.support.design.widget.Snackbar;
 import android.view.View;
-import android.widget.FrameLayout;
+import android.view.ViewGroup;
+
+import java.util.List;
 
 /**
- * FabOptions component default CoordinatorLayout.Behavior to react Snackbar
+ * FabOptions component default CoordinatorLayout.Behavior to react Snackbar and bottom sheets.
+ * All the dependencies are combined in a single pass, the component moves above the highest one.
  */
 
-public class FabOptionsBehavior extends CoordinatorLayout.Behavior<FrameLayout> {
+public class FabOptionsBehavior extends CoordinatorLayout.Behavior<FabOptions> {
 
     @Override
-    public boolean layoutDependsOn(CoordinatorLayout parent, FrameLayout child, View dependency) {
-        return dependency instanceof Snackbar.SnackbarLayout;
+    public boolean layoutDependsOn(CoordinatorLayout parent, FabOptions child, View dependency) {
+        return dependency instanceof Snackbar.SnackbarLayout || isBottomSheet(dependency);
     }
 
     @Override
-    public boolean onDependentViewChanged(CoordinatorLayout parent, FrameLayout child, View dependency) {
-        float translationY = Math.min(0, dependency.getTranslationY() - dependency.getHeight());
-        child.setTranslationY(translationY);
-        return true;
+    public boolean onDependentViewChanged(CoordinatorLayout parent, FabOptions child, View dependency) {
+        boolean traced = FabOptionsTrace.begin(FabOptionsTrace.BEHAVIOR_DEPENDENT_VIEW_CHANGED);
+        try {
+            return updateTranslation(parent, child, null);
+        } finally {
+            FabOptionsTrace.end(traced);
+        }
     }
 
     @Override
-    public void onDependentViewRemoved(CoordinatorLayout parent, FrameLayout child, View dependency) {
+    public void onDependentViewRemoved(CoordinatorLayout parent, FabOptions child, View dependency) {
         super.onDependentViewRemoved(parent, child, dependency);
-        child.setTranslationY(0);
+        updateTranslation(parent, child, dependency);
+    }
+
+    /**
+     * @return true only if the translation actually changed, avoids needless re-dispatching
+     */
+    private boolean updateTranslation(CoordinatorLayout parent, FabOptions child, @Nullable View removedDependency) {
+        float translationY = 0;
+        List<View> dependencies = parent.getDependencies(child);
+        for (int i = 0, size = dependencies.size(); i < size; i++) {
+            View dependency = dependencies.get(i);
+            // The graph also holds anchors and dodged inset edges, only Snackbars and sheets move us
+            if (dependency != removedDependency && dependency.getVisibility() == View.VISIBLE
+                    && layoutDependsOn(parent, child, dependency)) {
+                translationY = Math.min(translationY, getDependencyOffset(child, dependency));
+            }
+        }
+
+        if (translationY == child.getTranslationY()) {
+            return false;
+        }
+        child.setTranslationY(translationY);
+        return true;
+    }
+
+    private float getDependencyOffset(FabOptions child, View dependency) {
+        if (dependency instanceof Snackbar.SnackbarLayout) {
+            return Math.min(0, dependency.getTranslationY() - dependency.getHeight());
+        }
+        // Bottom sheets move through their offset, keep the component above the sheet top
+        return Math.min(0, dependency.getTop() + dependency.getTranslationY() - child.getBottom());
+    }
+
+    private static boolean isBottomSheet(View view) {
+        ViewGroup.LayoutParams layoutParams = view.getLayoutParams();
+        return layoutParams instanceof CoordinatorLayout.LayoutParams
+                && ((CoordinatorLayout.LayoutParams) layoutParams).getBehavior() instanceof BottomSheetBehavior;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) Joaquim Ley 2016. All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joaquimley.faboptions;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.ColorInt;
+import android.support.annotation.ColorRes;
+import android.support.annotation.MenuRes;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+/**
+ * Builds a FabOptions programmatically, either synchronously or on a background thread so the
+ * view creation, menu parsing and icons loading stay off the main thread, e.g. during startup.
+ * <pre>
+ * new FabOptionsBuilder(context)
+ *         .setButtonsMenu(R.menu.your_fab_buttons)
+ *         .buildAsync(new FabOptionsBuilder.OnFabOptionsReadyListener() {
+ *             public void onFabOptionsReady(FabOptions fabOptions) {
+ *                 container.addView(fabOptions);
+ *             }
+ *         });
+ * </pre>
+ */
+
+public class FabOptionsBuilder {
+
+    private static final String TAG = "FabOptionsBuilder";
+    private static final int NOT_SET = 0;
+
+    /**
+     * Called on the main thread once the FabOptions is ready to be attached
+     */
+    public interface OnFabOptionsReadyListener {
+        void onFabOptionsReady(@NonNull FabOptions fabOptions);
+    }
+
+    private final Context mContext;
+    @MenuRes
+    private int mMenuId = NOT_SET;
+    @ColorRes
+    private int mFabColor = NOT_SET;
+    @ColorInt
+    private int mBackgroundColor;
+    private boolean mHasBackgroundColor;
+    private boolean mDrawnButtons;
+
+    public FabOptionsBuilder(@NonNull Context context) {
+        mContext = context;
+    }
+
+    public FabOptionsBuilder setButtonsMenu(@MenuRes int menuId) {
+        mMenuId = menuId;
+        return this;
+    }
+
+    public FabOptionsBuilder setFabColor(@ColorRes int fabColor) {
+        mFabColor = fabColor;
+        return this;
+    }
+
+    public FabOptionsBuilder setBackgroundColor(@ColorInt int backgroundColor) {
+        mBackgroundColor = backgroundColor;
+        mHasBackgroundColor = true;
+        return this;
+    }
+
+    public FabOptionsBuilder setDrawnButtonsEnabled(boolean enabled) {
+        mDrawnButtons = enabled;
+        return this;
+    }
+
+    @NonNull
+    public FabOptions build() {
+        FabOptions fabOptions = new FabOptions(mContext);
+        if (mDrawnButtons) {
+            fabOptions.setDrawnButtonsEnabled(true);
+        }
+        if (mFabColor != NOT_SET) {
+            fabOptions.setFabColor(mFabColor);
+        }
+        if (mHasBackgroundColor) {
+            fabOptions.setBackgroundColor(mContext, mBackgroundColor);
+        }
+        if (mMenuId != NOT_SET) {
+            fabOptions.setButtonsMenu(mContext, mMenuId);
+        }
+        return fabOptions;
+    }
+
+    /**
+     * Builds the FabOptions on a background thread and hands it to the listener on the main
+     * thread, falls back to building on the main thread if the views can't be created off it
+     */
+    public void buildAsync(@NonNull final OnFabOptionsReadyListener listener) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                FabOptions fabOptions = null;
+                try {
+                    fabOptions = build();
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to build FabOptions in the background, building on the main thread", e);
+                }
+                final FabOptions builtFabOptions = fabOptions;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onFabOptionsReady(builtFabOptions != null ? builtFabOptions : build());
+                    }
+                });
+            }
+        });
+    }
+}
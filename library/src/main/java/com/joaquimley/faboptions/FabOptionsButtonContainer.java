@@ -16,20 +16,86 @@
 
 package com.joaquimley.faboptions;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.support.v4.widget.ExploreByTouchHelper;
 import android.support.v7.widget.AppCompatImageView;
+import android.text.TextUtils;
 import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.KeyEvent;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.accessibility.AccessibilityEvent;
 import android.widget.ImageView;
-import android.widget.LinearLayout;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Custom FabOptions buttons ({@link ImageView}) container, enables runtime view insertion
+ * Custom FabOptions buttons ({@link ImageView}) container, enables runtime view insertion.
+ * Buttons are laid out horizontally leaving a gap in the middle for the FAB (separator),
+ * the gap is computed while measuring so no separator view is needed.
+ * <p>
+ * When {@link #setDrawnButtonsEnabled(boolean)} is set the buttons aren't views, the icons are
+ * drawn and hit-tested by the container itself and exposed to accessibility as virtual views.
  */
 
-public class FabOptionsButtonContainer extends LinearLayout {
+public class FabOptionsButtonContainer extends ViewGroup {
+
+    private static final int NO_BUTTON = -1;
+    private static final float DISABLED_ALPHA = 0.38f;
+    private static final int NO_BADGE = 0;
+    private static final int BADGE_DOT = -1;
+    private static final int MAX_BADGE_COUNT = 99;
+
+    private final int mSeparatorMargin;
+    private final int mIconSize;
+    private final int mButtonPadding;
+    private int mSeparatorWidth;
+
+    private boolean mIsDrawingButtons;
+    private final ArrayList<DrawnButton> mDrawnButtons = new ArrayList<>();
+    private final SparseIntArray mButtonIndex = new SparseIntArray();
+    private boolean mButtonIndexDirty;
+    private OnHierarchyChangeListener mHierarchyChangeListener;
+    private float mIconScale = 1;
+    private int mPressedButton = NO_BUTTON;
+    private View.OnClickListener mDrawnButtonClickListener;
+    private View mClickProxy;
+    private DrawnButtonsAccessibilityHelper mAccessibilityHelper;
+    private FabOptionsButtonPool mButtonPool;
+
+    // Button id to badge count (or BADGE_DOT), labels are only built when a count changes
+    private final SparseIntArray mBadges = new SparseIntArray();
+    private final SparseArray<String> mBadgeLabels = new SparseArray<>();
+    private Paint mBadgePaint;
+    private Paint mBadgeTextPaint;
+    private int mBadgeSize;
+    private int mBadgeDotSize;
+    private final RectF mBadgeBounds = new RectF();
+    private final Rect mBadgeButtonBounds = new Rect();
+    private final Rect mBadgeDirtyRect = new Rect();
+    private boolean mButtonsAnimating;
 
     public FabOptionsButtonContainer(Context context) {
         this(context, null);
@@ -41,6 +107,201 @@ public class FabOptionsButtonContainer extends LinearLayout {
 
     public FabOptionsButtonContainer(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        mSeparatorMargin = getResources().getDimensionPixelSize(R.dimen.faboptions_separator_margin);
+        mIconSize = getResources().getDimensionPixelSize(R.dimen.faboptions_icon_size);
+        mButtonPadding = getResources().getDimensionPixelSize(R.dimen.faboptions_button_padding);
+        setPadding(mButtonPadding, 0, mButtonPadding, 0);
+        setClipChildren(false);
+        super.setOnHierarchyChangeListener(new ButtonIndexInvalidator());
+    }
+
+    /**
+     * Draw the buttons icons directly instead of inflating one view per button, must be set
+     * before any button is added. Drawn buttons don't show a ripple when pressed.
+     */
+    public void setDrawnButtonsEnabled(boolean enabled) {
+        if (enabled == mIsDrawingButtons) {
+            return;
+        }
+        if (getButtonCount() > 0) {
+            throw new IllegalStateException("Drawn buttons mode must be set before adding buttons");
+        }
+        mIsDrawingButtons = enabled;
+        setWillNotDraw(!enabled);
+        if (enabled) {
+            mClickProxy = new View(getContext());
+            mAccessibilityHelper = new DrawnButtonsAccessibilityHelper(this);
+            ViewCompat.setAccessibilityDelegate(this, mAccessibilityHelper);
+        } else {
+            mClickProxy = null;
+            mAccessibilityHelper = null;
+            ViewCompat.setAccessibilityDelegate(this, null);
+        }
+    }
+
+    /**
+     * Takes button views from (and returns the removed ones to) the given pool
+     */
+    public void setButtonPool(@Nullable FabOptionsButtonPool buttonPool) {
+        mButtonPool = buttonPool;
+    }
+
+    public boolean isDrawingButtons() {
+        return mIsDrawingButtons;
+    }
+
+    /**
+     * Click listener for drawn buttons, the view passed to the listener is a detached proxy
+     * which id is the clicked button id
+     */
+    public void setOnDrawnButtonClickListener(@Nullable View.OnClickListener listener) {
+        mDrawnButtonClickListener = listener;
+    }
+
+    public int getButtonCount() {
+        return mIsDrawingButtons ? mDrawnButtons.size() : getChildCount();
+    }
+
+    public int getButtonId(int index) {
+        return mIsDrawingButtons ? mDrawnButtons.get(index).mId : getChildAt(index).getId();
+    }
+
+    /**
+     * @return the index of the button with the given id or -1, a plain lookup (misses included)
+     * unless the children were changed outside of this container methods
+     */
+    public int indexOfButton(int buttonId) {
+        if (mButtonIndexDirty) {
+            reindexButtons();
+        }
+        int index = mButtonIndex.get(buttonId, NO_BUTTON);
+        if (index != NO_BUTTON && (index >= getButtonCount() || getButtonId(index) != buttonId)) {
+            // Stale entry, e.g. a button id changed behind our back
+            reindexButtons();
+            index = mButtonIndex.get(buttonId, NO_BUTTON);
+        }
+        return index;
+    }
+
+    private void reindexButtons() {
+        mButtonIndex.clear();
+        for (int i = 0; i < getButtonCount(); i++) {
+            mButtonIndex.put(getButtonId(i), i);
+        }
+        mButtonIndexDirty = false;
+    }
+
+    /**
+     * The index is kept by our own listener, the given one is notified through it
+     */
+    @Override
+    public void setOnHierarchyChangeListener(OnHierarchyChangeListener listener) {
+        mHierarchyChangeListener = listener;
+    }
+
+    public void addDrawnButton(int buttonId, CharSequence title, Drawable drawableIcon, @Nullable Integer index) {
+        if (!mIsDrawingButtons) {
+            throw new IllegalStateException("Drawn buttons mode isn't enabled");
+        }
+        if (drawableIcon != null) {
+            // Color filters would otherwise leak into the drawable shared state
+            drawableIcon = drawableIcon.mutate();
+            drawableIcon.setCallback(this);
+        }
+        DrawnButton drawnButton = new DrawnButton(buttonId, title, drawableIcon);
+        if (index == null) {
+            mDrawnButtons.add(drawnButton);
+        } else {
+            mDrawnButtons.add(index, drawnButton);
+        }
+        reindexButtons();
+        mAccessibilityHelper.invalidateRoot();
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Tints the icon of the button with the given id, works for both views and drawn buttons
+     *
+     * @return false if there's no such button
+     */
+    public boolean setButtonColorFilter(int buttonId, @ColorInt int color) {
+        int index = indexOfButton(buttonId);
+        if (index == NO_BUTTON) {
+            return false;
+        }
+        applyColorFilter(index, color);
+        if (mIsDrawingButtons) {
+            invalidate(mDrawnButtons.get(index).mBounds);
+        }
+        return true;
+    }
+
+    /**
+     * Tints the icons of all the given buttons with the same color, invalidating once
+     *
+     * @return the number of buttons found
+     */
+    public int setButtonsColorFilter(int[] buttonIds, @ColorInt int color) {
+        int styled = 0;
+        for (int buttonId : buttonIds) {
+            int index = indexOfButton(buttonId);
+            if (index != NO_BUTTON) {
+                applyColorFilter(index, color);
+                styled++;
+            }
+        }
+        if (mIsDrawingButtons && styled > 0) {
+            invalidate();
+        }
+        return styled;
+    }
+
+    /**
+     * Tints each button (keys) with its resolved color (values), invalidating once
+     *
+     * @return the number of buttons found
+     */
+    public int setButtonsColorFilter(SparseIntArray colorsByButtonId) {
+        int styled = 0;
+        for (int i = 0; i < colorsByButtonId.size(); i++) {
+            int index = indexOfButton(colorsByButtonId.keyAt(i));
+            if (index != NO_BUTTON) {
+                applyColorFilter(index, colorsByButtonId.valueAt(i));
+                styled++;
+            }
+        }
+        if (mIsDrawingButtons && styled > 0) {
+            invalidate();
+        }
+        return styled;
+    }
+
+    private void applyColorFilter(int index, @ColorInt int color) {
+        if (mIsDrawingButtons) {
+            DrawnButton drawnButton = mDrawnButtons.get(index);
+            drawnButton.mHasColorFilter = true;
+            drawnButton.mColorFilter = color;
+            applyDrawnButtonColorFilter(drawnButton);
+        } else {
+            ((ImageView) getChildAt(index)).setColorFilter(color);
+        }
+    }
+
+    void setIconScale(float iconScale) {
+        if (mIconScale != iconScale) {
+            // Hidden (0 scaled) drawn buttons aren't touch targets nor accessibility nodes
+            boolean shownChanged = (mIconScale > 0) != (iconScale > 0);
+            mIconScale = iconScale;
+            if (shownChanged && mAccessibilityHelper != null) {
+                mAccessibilityHelper.invalidateRoot();
+            }
+            invalidate();
+        }
+    }
+
+    float getIconScale() {
+        return mIconScale;
     }
 
     public AppCompatImageView addButton(Context context, int buttonId, CharSequence title, Drawable drawableIcon) {
@@ -48,8 +309,11 @@ public class FabOptionsButtonContainer extends LinearLayout {
     }
 
     public AppCompatImageView addButton(Context context, int buttonId, CharSequence title, Drawable drawableIcon, Integer index) {
-        AppCompatImageView fabOptionButton =
-                (AppCompatImageView) LayoutInflater.from(context).inflate(R.layout.faboptions_button, this, false);
+        AppCompatImageView fabOptionButton = mButtonPool != null ? mButtonPool.acquire(context) : null;
+        if (fabOptionButton == null) {
+            fabOptionButton = (AppCompatImageView) LayoutInflater.from(context)
+                    .inflate(R.layout.faboptions_button, this, false);
+        }
 
         fabOptionButton.setImageDrawable(drawableIcon);
         fabOptionButton.setContentDescription(title);
@@ -60,12 +324,762 @@ public class FabOptionsButtonContainer extends LinearLayout {
         } else {
             addView(fabOptionButton, index);
         }
+        reindexButtons();
         return fabOptionButton;
     }
 
-    public View addSeparator(Context context) {
-        View separator = LayoutInflater.from(context).inflate(R.layout.faboptions_separator, this, false);
-        addView(separator, (getChildCount() / 2));
-        return separator;
+    /**
+     * Removes the button with the given id, views and drawn buttons alike
+     *
+     * @return false if there's no such button
+     */
+    public boolean removeButton(int buttonId) {
+        int index = indexOfButton(buttonId);
+        if (index == NO_BUTTON) {
+            return false;
+        }
+        removeButtonAt(index);
+        return true;
+    }
+
+    /**
+     * Scales a button view out before removing it, it is detached from the layout right away and
+     * only kept drawing until the animation ends. Drawn buttons are removed immediately.
+     *
+     * @return false if there's no such button
+     */
+    boolean removeButtonAnimated(int buttonId, long duration) {
+        int index = indexOfButton(buttonId);
+        if (index == NO_BUTTON) {
+            return false;
+        }
+        if (mIsDrawingButtons) {
+            removeButtonAt(index);
+            return true;
+        }
+        final View button = getChildAt(index);
+        button.setOnClickListener(null);
+        deleteBadge(buttonId);
+        startViewTransition(button);
+        removeViewAt(index);
+        reindexButtons();
+        button.animate().scaleX(0).scaleY(0).setDuration(duration).setListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                button.animate().setListener(null);
+                endViewTransition(button);
+                if (mButtonPool != null && button instanceof AppCompatImageView) {
+                    mButtonPool.release((AppCompatImageView) button);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Hidden buttons are left out of the layout, the separator stays between the two halves of
+     * the visible ones. Only this button changes, the next layout pass places the others.
+     *
+     * @return false if there's no such button
+     */
+    public boolean setButtonVisible(int buttonId, boolean visible) {
+        int index = indexOfButton(buttonId);
+        if (index == NO_BUTTON) {
+            return false;
+        }
+        if (mIsDrawingButtons) {
+            DrawnButton drawnButton = mDrawnButtons.get(index);
+            if (drawnButton.mVisible != visible) {
+                drawnButton.mVisible = visible;
+                mAccessibilityHelper.invalidateRoot();
+                requestLayout();
+                invalidate();
+            }
+        } else {
+            // GONE already requests a single layout pass when it changes
+            getChildAt(index).setVisibility(visible ? VISIBLE : GONE);
+        }
+        return true;
+    }
+
+    /**
+     * Disabled buttons are dimmed and ignore clicks
+     *
+     * @return false if there's no such button
+     */
+    public boolean setButtonEnabled(int buttonId, boolean enabled) {
+        int index = indexOfButton(buttonId);
+        if (index == NO_BUTTON) {
+            return false;
+        }
+        if (mIsDrawingButtons) {
+            DrawnButton drawnButton = mDrawnButtons.get(index);
+            if (drawnButton.mEnabled != enabled) {
+                drawnButton.mEnabled = enabled;
+                applyDrawnButtonAlpha(drawnButton);
+                mAccessibilityHelper.invalidateVirtualView(index);
+                invalidate(drawnButton.mBounds);
+            }
+        } else {
+            View button = getChildAt(index);
+            if (button.isEnabled() != enabled) {
+                button.setEnabled(enabled);
+                button.setAlpha(enabled ? 1 : DISABLED_ALPHA);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The filter belongs to the button, a new icon gets it back as ImageView does for views
+     */
+    private static void applyDrawnButtonColorFilter(DrawnButton drawnButton) {
+        if (drawnButton.mIcon != null && drawnButton.mHasColorFilter) {
+            drawnButton.mIcon.setColorFilter(drawnButton.mColorFilter, PorterDuff.Mode.SRC_ATOP);
+        }
+    }
+
+    private static void applyDrawnButtonAlpha(DrawnButton drawnButton) {
+        if (drawnButton.mIcon != null) {
+            drawnButton.mIcon.setAlpha(drawnButton.mEnabled ? 255 : Math.round(255 * DISABLED_ALPHA));
+        }
+    }
+
+    /**
+     * Swaps the id, title and icon of a button in place, no view is added or removed
+     *
+     * @return false if there's no such button
+     */
+    public boolean replaceButton(int buttonId, int newButtonId, CharSequence title, Drawable drawableIcon) {
+        int index = indexOfButton(buttonId);
+        if (index == NO_BUTTON) {
+            return false;
+        }
+        if (newButtonId != buttonId) {
+            clearButtonBadge(buttonId);
+        }
+        if (mIsDrawingButtons) {
+            mDrawnButtons.get(index).mId = newButtonId;
+        } else {
+            getChildAt(index).setId(newButtonId);
+        }
+        reindexButtons();
+        setButtonTitle(newButtonId, title);
+        setButtonIcon(newButtonId, drawableIcon);
+        return true;
+    }
+
+    /**
+     * Shows a numeric badge on the button icon, counts above 99 read "99+" and 0 or less clears
+     * it. Only the badge area is invalidated.
+     *
+     * @return false if there's no such button
+     */
+    public boolean setButtonBadge(int buttonId, int count) {
+        return setBadge(buttonId, count > 0 ? Math.min(count, MAX_BADGE_COUNT + 1) : NO_BADGE);
+    }
+
+    /**
+     * Shows a dot indicator on the button icon
+     *
+     * @return false if there's no such button
+     */
+    public boolean setButtonBadgeDot(int buttonId) {
+        return setBadge(buttonId, BADGE_DOT);
+    }
+
+    public boolean clearButtonBadge(int buttonId) {
+        return setBadge(buttonId, NO_BADGE);
+    }
+
+    public void setBadgeColors(@ColorInt int backgroundColor, @ColorInt int textColor) {
+        ensureBadgePaints();
+        mBadgePaint.setColor(backgroundColor);
+        mBadgeTextPaint.setColor(textColor);
+        if (mBadges.size() > 0) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Badges follow their button scale, which animates without redrawing this container. While
+     * the buttons animate the container redraws on each frame, only when there are badges.
+     */
+    void setButtonsAnimating(boolean animating) {
+        mButtonsAnimating = animating;
+        if (mBadges.size() > 0) {
+            invalidate();
+        }
+    }
+
+    private boolean setBadge(int buttonId, int badge) {
+        int index = indexOfButton(buttonId);
+        if (index == NO_BUTTON) {
+            return false;
+        }
+        if (mBadges.get(buttonId, NO_BADGE) == badge) {
+            return true;
+        }
+        ensureBadgePaints();
+        invalidateBadge(index, buttonId);
+        if (badge == NO_BADGE) {
+            deleteBadge(buttonId);
+        } else {
+            mBadges.put(buttonId, badge);
+            if (badge == BADGE_DOT) {
+                mBadgeLabels.remove(buttonId);
+            } else {
+                mBadgeLabels.put(buttonId, badge > MAX_BADGE_COUNT ? MAX_BADGE_COUNT + "+" : Integer.toString(badge));
+            }
+        }
+        invalidateBadge(index, buttonId);
+        return true;
+    }
+
+    private void deleteBadge(int buttonId) {
+        mBadges.delete(buttonId);
+        mBadgeLabels.remove(buttonId);
+    }
+
+    private void invalidateBadge(int index, int buttonId) {
+        int badge = mBadges.get(buttonId, NO_BADGE);
+        if (badge != NO_BADGE && getBadgeBounds(index, badge, mBadgeLabels.get(buttonId), mBadgeBounds)) {
+            mBadgeBounds.roundOut(mBadgeDirtyRect);
+            // Antialiased edges
+            mBadgeDirtyRect.inset(-1, -1);
+            invalidate(mBadgeDirtyRect);
+        }
+    }
+
+    private void ensureBadgePaints() {
+        if (mBadgePaint != null) {
+            return;
+        }
+        mBadgeSize = getResources().getDimensionPixelSize(R.dimen.faboptions_badge_size);
+        mBadgeDotSize = getResources().getDimensionPixelSize(R.dimen.faboptions_badge_dot_size);
+        mBadgePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mBadgePaint.setColor(ContextCompat.getColor(getContext(), R.color.faboptions_badge));
+        mBadgeTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mBadgeTextPaint.setColor(ContextCompat.getColor(getContext(), R.color.faboptions_badge_text));
+        mBadgeTextPaint.setTextSize(getResources().getDimension(R.dimen.faboptions_badge_text_size));
+        mBadgeTextPaint.setTextAlign(Paint.Align.CENTER);
+        mBadgeTextPaint.setTypeface(Typeface.DEFAULT_BOLD);
+    }
+
+    /**
+     * Badges are centered on the top end corner of the button icon, unscaled
+     *
+     * @return false if the button isn't visible or laid out yet
+     */
+    private boolean getBadgeBounds(int index, int badge, @Nullable String label, RectF outBounds) {
+        if (!getButtonBounds(index, mBadgeButtonBounds)) {
+            return false;
+        }
+        float height = badge == BADGE_DOT ? mBadgeDotSize : mBadgeSize;
+        float width = label != null ? Math.max(height, mBadgeTextPaint.measureText(label) + height / 2) : height;
+        boolean isRtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+        float centerX = isRtl ? mBadgeButtonBounds.left : mBadgeButtonBounds.right;
+        float centerY = mBadgeButtonBounds.top;
+        outBounds.set(centerX - width / 2, centerY - height / 2, centerX + width / 2, centerY + height / 2);
+        return true;
+    }
+
+    private boolean getButtonBounds(int index, Rect outBounds) {
+        if (mIsDrawingButtons) {
+            DrawnButton drawnButton = mDrawnButtons.get(index);
+            outBounds.set(drawnButton.mBounds);
+            return drawnButton.mVisible && !outBounds.isEmpty();
+        }
+        View button = getChildAt(index);
+        outBounds.set(button.getLeft(), button.getTop(), button.getRight(), button.getBottom());
+        return button.getVisibility() == VISIBLE && !outBounds.isEmpty();
+    }
+
+    void removeButtonAt(int index) {
+        deleteBadge(getButtonId(index));
+        if (mIsDrawingButtons) {
+            DrawnButton drawnButton = mDrawnButtons.remove(index);
+            if (drawnButton.mIcon != null) {
+                drawnButton.mIcon.setCallback(null);
+            }
+            mAccessibilityHelper.invalidateRoot();
+            requestLayout();
+            invalidate();
+        } else {
+            View button = getChildAt(index);
+            removeViewAt(index);
+            if (mButtonPool != null && button instanceof AppCompatImageView) {
+                mButtonPool.release((AppCompatImageView) button);
+            }
+        }
+        reindexButtons();
+    }
+
+    /**
+     * Moves a button without removing it from the window, views are detached/re-attached
+     */
+    void moveButton(int fromIndex, int toIndex) {
+        if (fromIndex == toIndex) {
+            return;
+        }
+        if (mIsDrawingButtons) {
+            mDrawnButtons.add(toIndex, mDrawnButtons.remove(fromIndex));
+            mAccessibilityHelper.invalidateRoot();
+        } else {
+            View button = getChildAt(fromIndex);
+            detachViewFromParent(fromIndex);
+            attachViewToParent(button, toIndex, button.getLayoutParams());
+        }
+        reindexButtons();
+        requestLayout();
+        invalidate();
+    }
+
+    public boolean setButtonTitle(int buttonId, CharSequence title) {
+        int index = indexOfButton(buttonId);
+        if (index == NO_BUTTON) {
+            return false;
+        }
+        if (mIsDrawingButtons) {
+            DrawnButton drawnButton = mDrawnButtons.get(index);
+            if (!TextUtils.equals(drawnButton.mTitle, title)) {
+                drawnButton.mTitle = title;
+                mAccessibilityHelper.invalidateVirtualView(index);
+            }
+        } else if (!TextUtils.equals(getChildAt(index).getContentDescription(), title)) {
+            getChildAt(index).setContentDescription(title);
+        }
+        return true;
+    }
+
+    public boolean setButtonIcon(int buttonId, Drawable drawableIcon) {
+        int index = indexOfButton(buttonId);
+        if (index == NO_BUTTON) {
+            return false;
+        }
+        if (mIsDrawingButtons) {
+            DrawnButton drawnButton = mDrawnButtons.get(index);
+            if (drawnButton.mIcon != null) {
+                drawnButton.mIcon.setCallback(null);
+            }
+            if (drawableIcon != null) {
+                drawableIcon = drawableIcon.mutate();
+                drawableIcon.setCallback(this);
+                drawableIcon.setBounds(drawnButton.mBounds);
+            }
+            drawnButton.mIcon = drawableIcon;
+            applyDrawnButtonColorFilter(drawnButton);
+            applyDrawnButtonAlpha(drawnButton);
+            invalidate(drawnButton.mBounds);
+        } else {
+            ((ImageView) getChildAt(index)).setImageDrawable(drawableIcon);
+        }
+        return true;
+    }
+
+    /**
+     * Sets the width of the gap left between the two halves of the buttons, meant to be called by
+     * {@link FabOptions} while measuring, hence it doesn't request a new layout
+     */
+    void setSeparatorWidth(int separatorWidth) {
+        mSeparatorWidth = separatorWidth;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = 0;
+        int height = 0;
+        int visibleButtons = 0;
+        if (mIsDrawingButtons) {
+            visibleButtons = getVisibleDrawnButtonCount();
+            width = visibleButtons * getDrawnButtonSpan();
+            height = visibleButtons > 0 ? getDrawnButtonSpan() : 0;
+        }
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() == GONE) {
+                continue;
+            }
+            measureChildWithMargins(child, widthMeasureSpec, 0, heightMeasureSpec, 0);
+            MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
+            width += child.getMeasuredWidth() + lp.leftMargin + lp.rightMargin;
+            height = Math.max(height, child.getMeasuredHeight() + lp.topMargin + lp.bottomMargin);
+            visibleButtons++;
+        }
+        if (visibleButtons > 0) {
+            width += getSeparatorSpan();
+        }
+        width += getPaddingLeft() + getPaddingRight();
+        height += getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(Math.max(width, getSuggestedMinimumWidth()), widthMeasureSpec),
+                resolveSize(Math.max(height, getSuggestedMinimumHeight()), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (mIsDrawingButtons) {
+            layoutDrawnButtons(r - l, b - t);
+            return;
+        }
+        int visibleButtons = 0;
+        int contentWidth = 0;
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() != GONE) {
+                MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
+                contentWidth += child.getMeasuredWidth() + lp.leftMargin + lp.rightMargin;
+                visibleButtons++;
+            }
+        }
+        if (visibleButtons == 0) {
+            return;
+        }
+        contentWidth += getSeparatorSpan();
+
+        boolean isRtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+        // Same as a separator inserted at (buttons / 2), mirrored for RTL
+        int separatorPosition = isRtl ? visibleButtons - (visibleButtons / 2) : visibleButtons / 2;
+        int availableWidth = r - l - getPaddingLeft() - getPaddingRight();
+        int availableHeight = b - t - getPaddingTop() - getPaddingBottom();
+        int left = getPaddingLeft() + Math.max(0, (availableWidth - contentWidth) / 2);
+
+        int position = 0;
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(isRtl ? getChildCount() - 1 - i : i);
+            if (child.getVisibility() == GONE) {
+                continue;
+            }
+            if (position == separatorPosition) {
+                left += getSeparatorSpan();
+            }
+            MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
+            int childWidth = child.getMeasuredWidth();
+            int childHeight = child.getMeasuredHeight();
+            int top = getPaddingTop() + lp.topMargin
+                    + (availableHeight - childHeight - lp.topMargin - lp.bottomMargin) / 2;
+            left += lp.leftMargin;
+            child.layout(left, top, left + childWidth, top + childHeight);
+            left += childWidth + lp.rightMargin;
+            position++;
+        }
+    }
+
+    private void layoutDrawnButtons(int width, int height) {
+        int visibleButtons = getVisibleDrawnButtonCount();
+        if (visibleButtons == 0) {
+            return;
+        }
+        int buttonSpan = getDrawnButtonSpan();
+        int contentWidth = visibleButtons * buttonSpan + getSeparatorSpan();
+        boolean isRtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+        int separatorPosition = isRtl ? visibleButtons - (visibleButtons / 2) : visibleButtons / 2;
+        int availableWidth = width - getPaddingLeft() - getPaddingRight();
+        int availableHeight = height - getPaddingTop() - getPaddingBottom();
+        int left = getPaddingLeft() + Math.max(0, (availableWidth - contentWidth) / 2) + mButtonPadding;
+        int top = getPaddingTop() + (availableHeight - mIconSize) / 2;
+
+        int buttonCount = mDrawnButtons.size();
+        int position = 0;
+        for (int i = 0; i < buttonCount; i++) {
+            DrawnButton drawnButton = mDrawnButtons.get(isRtl ? buttonCount - 1 - i : i);
+            if (!drawnButton.mVisible) {
+                drawnButton.mBounds.setEmpty();
+                continue;
+            }
+            if (position == separatorPosition) {
+                left += getSeparatorSpan();
+            }
+            drawnButton.mBounds.set(left, top, left + mIconSize, top + mIconSize);
+            if (drawnButton.mIcon != null) {
+                drawnButton.mIcon.setBounds(drawnButton.mBounds);
+            }
+            left += buttonSpan;
+            position++;
+        }
+    }
+
+    private int getVisibleDrawnButtonCount() {
+        int visibleButtons = 0;
+        for (int i = 0; i < mDrawnButtons.size(); i++) {
+            if (mDrawnButtons.get(i).mVisible) {
+                visibleButtons++;
+            }
+        }
+        return visibleButtons;
+    }
+
+    private int getSeparatorSpan() {
+        return mSeparatorWidth + 2 * mSeparatorMargin;
+    }
+
+    private int getDrawnButtonSpan() {
+        return mIconSize + 2 * mButtonPadding;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (!mIsDrawingButtons || mIconScale <= 0) {
+            return;
+        }
+        for (int i = 0; i < mDrawnButtons.size(); i++) {
+            DrawnButton drawnButton = mDrawnButtons.get(i);
+            if (drawnButton.mIcon == null || !drawnButton.mVisible) {
+                continue;
+            }
+            int saveCount = canvas.save();
+            canvas.scale(mIconScale, mIconScale, drawnButton.mBounds.exactCenterX(), drawnButton.mBounds.exactCenterY());
+            drawnButton.mIcon.draw(canvas);
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    /**
+     * Badges are drawn over the buttons (views or drawn icons) in this same pass, no badge views
+     */
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+        if (mBadges.size() == 0) {
+            return;
+        }
+        for (int i = 0; i < mBadges.size(); i++) {
+            int buttonId = mBadges.keyAt(i);
+            int index = indexOfButton(buttonId);
+            if (index == NO_BUTTON) {
+                continue;
+            }
+            float scale = mIsDrawingButtons ? mIconScale : getChildAt(index).getScaleX();
+            String label = mBadgeLabels.get(buttonId);
+            if (scale <= 0 || !getBadgeBounds(index, mBadges.valueAt(i), label, mBadgeBounds)) {
+                continue;
+            }
+            int saveCount = canvas.save();
+            canvas.scale(scale, scale, mBadgeButtonBounds.exactCenterX(), mBadgeButtonBounds.exactCenterY());
+            float radius = mBadgeBounds.height() / 2;
+            canvas.drawRoundRect(mBadgeBounds, radius, radius, mBadgePaint);
+            if (label != null) {
+                float textOffset = -(mBadgeTextPaint.ascent() + mBadgeTextPaint.descent()) / 2;
+                canvas.drawText(label, mBadgeBounds.centerX(), mBadgeBounds.centerY() + textOffset, mBadgeTextPaint);
+            }
+            canvas.restoreToCount(saveCount);
+        }
+        if (mButtonsAnimating && !mIsDrawingButtons) {
+            ViewCompat.postInvalidateOnAnimation(this);
+        }
+    }
+
+    @Override
+    protected boolean verifyDrawable(@NonNull Drawable who) {
+        if (mIsDrawingButtons) {
+            for (int i = 0; i < mDrawnButtons.size(); i++) {
+                if (mDrawnButtons.get(i).mIcon == who) {
+                    return true;
+                }
+            }
+        }
+        return super.verifyDrawable(who);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!mIsDrawingButtons) {
+            return super.onTouchEvent(event);
+        }
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mPressedButton = findDrawnButtonAt(event.getX(), event.getY());
+                return mPressedButton != NO_BUTTON;
+
+            case MotionEvent.ACTION_UP:
+                if (mPressedButton != NO_BUTTON
+                        && mPressedButton == findDrawnButtonAt(event.getX(), event.getY())) {
+                    performDrawnButtonClick(mPressedButton);
+                }
+                mPressedButton = NO_BUTTON;
+                return true;
+
+            case MotionEvent.ACTION_CANCEL:
+                mPressedButton = NO_BUTTON;
+                return true;
+
+            default:
+                return mPressedButton != NO_BUTTON;
+        }
+    }
+
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        if (mAccessibilityHelper != null && mAccessibilityHelper.dispatchHoverEvent(event)) {
+            return true;
+        }
+        return super.dispatchHoverEvent(event);
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        if (mAccessibilityHelper != null && mAccessibilityHelper.dispatchKeyEvent(event)) {
+            return true;
+        }
+        return super.dispatchKeyEvent(event);
+    }
+
+    @Override
+    protected void onFocusChanged(boolean gainFocus, int direction, @Nullable Rect previouslyFocusedRect) {
+        super.onFocusChanged(gainFocus, direction, previouslyFocusedRect);
+        if (mAccessibilityHelper != null) {
+            mAccessibilityHelper.onFocusChanged(gainFocus, direction, previouslyFocusedRect);
+        }
+    }
+
+    private int findDrawnButtonAt(float x, float y) {
+        if (mIconScale <= 0) {
+            return NO_BUTTON;
+        }
+        int halfPadding = mButtonPadding / 2;
+        for (int i = 0; i < mDrawnButtons.size(); i++) {
+            if (!mDrawnButtons.get(i).mVisible) {
+                continue;
+            }
+            Rect bounds = mDrawnButtons.get(i).mBounds;
+            if (x >= bounds.left - halfPadding && x < bounds.right + halfPadding
+                    && y >= bounds.top - halfPadding && y < bounds.bottom + halfPadding) {
+                return i;
+            }
+        }
+        return NO_BUTTON;
+    }
+
+    private boolean performDrawnButtonClick(int index) {
+        if (mDrawnButtonClickListener == null || !mDrawnButtons.get(index).mEnabled) {
+            return false;
+        }
+        playSoundEffect(SoundEffectConstants.CLICK);
+        mClickProxy.setId(mDrawnButtons.get(index).mId);
+        mDrawnButtonClickListener.onClick(mClickProxy);
+        mAccessibilityHelper.sendEventForVirtualView(index, AccessibilityEvent.TYPE_VIEW_CLICKED);
+        return true;
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return false;
+    }
+
+    @Override
+    protected boolean checkLayoutParams(ViewGroup.LayoutParams p) {
+        return p instanceof MarginLayoutParams;
+    }
+
+    @Override
+    protected ViewGroup.LayoutParams generateDefaultLayoutParams() {
+        return new MarginLayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+    }
+
+    @Override
+    public ViewGroup.LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new MarginLayoutParams(getContext(), attrs);
+    }
+
+    @Override
+    protected ViewGroup.LayoutParams generateLayoutParams(ViewGroup.LayoutParams p) {
+        if (p instanceof MarginLayoutParams) {
+            return new MarginLayoutParams((MarginLayoutParams) p);
+        }
+        return new MarginLayoutParams(p);
+    }
+
+    /**
+     * The container methods reindex right away, this catches views added or removed from outside
+     */
+    private final class ButtonIndexInvalidator implements OnHierarchyChangeListener {
+        @Override
+        public void onChildViewAdded(View parent, View child) {
+            mButtonIndexDirty = true;
+            if (mHierarchyChangeListener != null) {
+                mHierarchyChangeListener.onChildViewAdded(parent, child);
+            }
+        }
+
+        @Override
+        public void onChildViewRemoved(View parent, View child) {
+            mButtonIndexDirty = true;
+            if (mHierarchyChangeListener != null) {
+                mHierarchyChangeListener.onChildViewRemoved(parent, child);
+            }
+        }
+    }
+
+    private static final class DrawnButton {
+        int mId;
+        CharSequence mTitle;
+        Drawable mIcon;
+        boolean mVisible = true;
+        boolean mEnabled = true;
+        boolean mHasColorFilter;
+        @ColorInt
+        int mColorFilter;
+        final Rect mBounds = new Rect();
+
+        DrawnButton(int id, CharSequence title, Drawable icon) {
+            mId = id;
+            mTitle = title;
+            mIcon = icon;
+        }
+    }
+
+    /**
+     * Exposes each drawn button as a virtual view, the virtual view id is the button index
+     */
+    private final class DrawnButtonsAccessibilityHelper extends ExploreByTouchHelper {
+
+        DrawnButtonsAccessibilityHelper(View host) {
+            super(host);
+        }
+
+        @Override
+        protected int getVirtualViewAt(float x, float y) {
+            int index = findDrawnButtonAt(x, y);
+            return index == NO_BUTTON ? INVALID_ID : index;
+        }
+
+        @Override
+        protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+            if (mIconScale <= 0) {
+                return;
+            }
+            for (int i = 0; i < mDrawnButtons.size(); i++) {
+                if (mDrawnButtons.get(i).mVisible) {
+                    virtualViewIds.add(i);
+                }
+            }
+        }
+
+        @Override
+        protected void onPopulateNodeForVirtualView(int virtualViewId, @NonNull AccessibilityNodeInfoCompat node) {
+            if (virtualViewId >= mDrawnButtons.size()) {
+                // Stale id after the buttons changed, bounds are still required by the helper
+                node.setContentDescription("");
+                node.setBoundsInParent(new Rect(0, 0, 1, 1));
+                return;
+            }
+            DrawnButton drawnButton = mDrawnButtons.get(virtualViewId);
+            node.setContentDescription(drawnButton.mTitle);
+            node.setBoundsInParent(drawnButton.mBounds.isEmpty() ? new Rect(0, 0, 1, 1) : drawnButton.mBounds);
+            node.setEnabled(drawnButton.mEnabled);
+            node.setClickable(drawnButton.mEnabled);
+            if (drawnButton.mEnabled) {
+                node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+            }
+        }
+
+        @Override
+        protected boolean onPerformActionForVirtualView(int virtualViewId, int action, @Nullable Bundle arguments) {
+            if (action == AccessibilityNodeInfoCompat.ACTION_CLICK && mIconScale > 0
+                    && virtualViewId < mDrawnButtons.size()) {
+                return performDrawnButtonClick(virtualViewId);
+            }
+            return false;
+        }
     }
 }
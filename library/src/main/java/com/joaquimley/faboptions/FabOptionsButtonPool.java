@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) Joaquim Ley 2016. All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joaquimley.faboptions;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.AppCompatImageView;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of button views shared between FabOptions instances, e.g. the ones inside RecyclerView
+ * items. Buttons removed from a FabOptions go back to the pool and are taken again instead of
+ * being inflated when another instance needs a button.
+ * <p>
+ * Like a RecyclerView.RecycledViewPool only share it between instances using the same Context.
+ */
+
+public class FabOptionsButtonPool {
+
+    public static final int DEFAULT_MAX_RECYCLED_BUTTONS = 10;
+
+    private final ArrayList<AppCompatImageView> mScrap = new ArrayList<>();
+    private int mMaxRecycledButtons = DEFAULT_MAX_RECYCLED_BUTTONS;
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * Maximum number of buttons kept by the pool, exceeding buttons are dropped
+     */
+    public void setMaxRecycledButtons(int maxRecycledButtons) {
+        mMaxRecycledButtons = maxRecycledButtons;
+        while (mScrap.size() > maxRecycledButtons) {
+            mScrap.remove(mScrap.size() - 1);
+        }
+    }
+
+    public int getMaxRecycledButtons() {
+        return mMaxRecycledButtons;
+    }
+
+    public int getRecycledButtonCount() {
+        return mScrap.size();
+    }
+
+    /**
+     * @return number of buttons taken from the pool instead of being inflated
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return number of buttons which had to be inflated because the pool had none
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public void clear() {
+        mScrap.clear();
+    }
+
+    @Nullable
+    AppCompatImageView acquire(Context context) {
+        for (int i = mScrap.size() - 1; i >= 0; i--) {
+            if (mScrap.get(i).getContext() == context) {
+                mHitCount++;
+                return mScrap.remove(i);
+            }
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * Resets the (already detached) button and keeps it if there's room for it
+     */
+    void release(AppCompatImageView button) {
+        if (mScrap.size() >= mMaxRecycledButtons) {
+            return;
+        }
+        button.setOnClickListener(null);
+        button.setClickable(true);
+        button.setImageDrawable(null);
+        button.clearColorFilter();
+        button.setContentDescription(null);
+        button.setId(View.NO_ID);
+        button.setScaleX(1);
+        button.setScaleY(1);
+        button.setVisibility(View.VISIBLE);
+        button.setEnabled(true);
+        button.setAlpha(1);
+        button.setLayerType(View.LAYER_TYPE_NONE, null);
+        mScrap.add(button);
+    }
+}
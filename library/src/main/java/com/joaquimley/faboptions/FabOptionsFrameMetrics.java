@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) Joaquim Ley 2016. All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joaquimley.faboptions;
+
+/**
+ * Frame statistics of a single open or close animation, the same instance is refilled for every
+ * animation so reporting doesn't allocate
+ */
+public final class FabOptionsFrameMetrics {
+
+    private boolean mOpening;
+    private boolean mCompleted;
+    private long mDurationNanos;
+    private int mFrameCount;
+    private int mSlowFrameCount;
+    private int mDroppedFrameCount;
+    private long mLongestFrameNanos;
+    private long mFrameIntervalNanos;
+
+    FabOptionsFrameMetrics() {
+    }
+
+    /**
+     * @return true for an open animation, false for a close one
+     */
+    public boolean isOpening() {
+        return mOpening;
+    }
+
+    /**
+     * @return false when the animation was reversed or cancelled before its end
+     */
+    public boolean isCompleted() {
+        return mCompleted;
+    }
+
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return frames that took longer than one and a half display refresh intervals
+     */
+    public int getSlowFrameCount() {
+        return mSlowFrameCount;
+    }
+
+    /**
+     * @return display refreshes missed across the whole animation
+     */
+    public int getDroppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    public long getLongestFrameNanos() {
+        return mLongestFrameNanos;
+    }
+
+    public long getFrameIntervalNanos() {
+        return mFrameIntervalNanos;
+    }
+
+    void reset(boolean opening, long frameIntervalNanos) {
+        mOpening = opening;
+        mCompleted = false;
+        mDurationNanos = 0;
+        mFrameCount = 0;
+        mSlowFrameCount = 0;
+        mDroppedFrameCount = 0;
+        mLongestFrameNanos = 0;
+        mFrameIntervalNanos = frameIntervalNanos;
+    }
+
+    void addFrame(long frameNanos) {
+        mFrameCount++;
+        if (frameNanos <= 0) {
+            // First frame, nothing to compare with yet
+            return;
+        }
+        mLongestFrameNanos = Math.max(mLongestFrameNanos, frameNanos);
+        if (frameNanos * 2 > mFrameIntervalNanos * 3) {
+            mSlowFrameCount++;
+        }
+        long missed = (frameNanos + mFrameIntervalNanos / 2) / mFrameIntervalNanos - 1;
+        if (missed > 0) {
+            mDroppedFrameCount += missed;
+        }
+    }
+
+    void finish(long durationNanos, boolean completed) {
+        mDurationNanos = durationNanos;
+        mCompleted = completed;
+    }
+
+    @Override
+    public String toString() {
+        return "FabOptionsFrameMetrics{opening=" + mOpening
+                + ", completed=" + mCompleted
+                + ", durationNanos=" + mDurationNanos
+                + ", frameCount=" + mFrameCount
+                + ", slowFrameCount=" + mSlowFrameCount
+                + ", droppedFrameCount=" + mDroppedFrameCount
+                + ", longestFrameNanos=" + mLongestFrameNanos + '}';
+    }
+}
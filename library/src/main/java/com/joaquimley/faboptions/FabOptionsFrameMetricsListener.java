@@ -0,0 +1,12 @@
+package com.joaquimley.faboptions;
+
+/**
+ * FabOptions exposed listener for the smoothness of each open and close animation
+ */
+
+public interface FabOptionsFrameMetricsListener {
+	/**
+	 * @param metrics reused for every animation, copy the values to keep them
+	 */
+	void onAnimationFrameMetrics(FabOptionsFrameMetrics metrics);
+}
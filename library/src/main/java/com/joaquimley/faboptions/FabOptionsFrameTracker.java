@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) Joaquim Ley 2016. All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joaquimley.faboptions;
+
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+import android.view.Choreographer;
+import android.view.Display;
+
+/**
+ * Counts the frames drawn while an open/close animation runs through Choreographer callbacks,
+ * frame durations are the gaps between consecutive vsync timestamps
+ */
+@RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+final class FabOptionsFrameTracker implements Choreographer.FrameCallback {
+
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private final FabOptionsFrameMetricsListener mListener;
+    private final FabOptionsFrameMetrics mMetrics = new FabOptionsFrameMetrics();
+
+    private boolean mTracking;
+    private long mStartNanos;
+    private long mLastFrameNanos;
+
+    FabOptionsFrameTracker(FabOptionsFrameMetricsListener listener) {
+        mListener = listener;
+    }
+
+    void start(boolean opening, Display display) {
+        if (mTracking) {
+            stop(false);
+        }
+        mTracking = true;
+        mMetrics.reset(opening, getFrameIntervalNanos(display));
+        mStartNanos = System.nanoTime();
+        mLastFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void stop(boolean completed) {
+        if (!mTracking) {
+            return;
+        }
+        mTracking = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        mMetrics.finish(System.nanoTime() - mStartNanos, completed);
+        mListener.onAnimationFrameMetrics(mMetrics);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mTracking) {
+            return;
+        }
+        mMetrics.addFrame(mLastFrameNanos == 0 ? 0 : frameTimeNanos - mLastFrameNanos);
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private static long getFrameIntervalNanos(Display display) {
+        float refreshRate = display != null ? display.getRefreshRate() : 0;
+        return refreshRate >= 1 ? (long) (1000000000L / refreshRate) : DEFAULT_FRAME_INTERVAL_NANOS;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) Joaquim Ley 2016. All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joaquimley.faboptions;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.MenuRes;
+import android.support.annotation.Nullable;
+import android.support.v7.view.SupportMenuInflater;
+import android.support.v7.view.menu.MenuBuilder;
+import android.util.LruCache;
+import android.view.MenuItem;
+
+/**
+ * Process wide cache of parsed FabOptions menus, keyed by menu resource and configuration.
+ * Instances sharing a menu skip the XML parsing and get their icons from the cached
+ * {@link Drawable.ConstantState}s.
+ */
+
+public final class FabOptionsMenuCache {
+
+    private static final int MAX_MENUS = 16;
+
+    private static final LruCache<Long, ParsedMenu> sMenus = new LruCache<>(MAX_MENUS);
+
+    private FabOptionsMenuCache() {
+    }
+
+    /**
+     * Drops all the cached menus, e.g. on {@link android.content.ComponentCallbacks2#onTrimMemory(int)}
+     */
+    public static void clear() {
+        sMenus.evictAll();
+    }
+
+    static ParsedMenu get(Context context, @MenuRes int menuId) {
+        Configuration configuration = context.getResources().getConfiguration();
+        Long key = ((long) menuId << 32) | (configuration.hashCode() & 0xffffffffL);
+        ParsedMenu menu = sMenus.get(key);
+        if (menu != null && menu.mConfiguration.equals(configuration)) {
+            return menu;
+        }
+        menu = parse(context, menuId);
+        if (menu.isShareable()) {
+            sMenus.put(key, menu);
+        }
+        return menu;
+    }
+
+    @SuppressLint("RestrictedApi")
+    private static ParsedMenu parse(Context context, @MenuRes int menuId) {
+        MenuBuilder menuBuilder = new MenuBuilder(context);
+        SupportMenuInflater menuInf = new SupportMenuInflater(context);
+        menuInf.inflate(menuId, menuBuilder);
+        return new ParsedMenu(menuBuilder, context.getResources().getConfiguration());
+    }
+
+    /**
+     * Immutable snapshot of a parsed menu
+     */
+    static final class ParsedMenu {
+        private final Configuration mConfiguration;
+        private final int[] mIds;
+        private final CharSequence[] mTitles;
+        private final Drawable.ConstantState[] mIconStates;
+        private final Drawable[] mUnshareableIcons;
+        private final boolean[] mVisible;
+        private final boolean[] mEnabled;
+
+        @SuppressLint("RestrictedApi")
+        ParsedMenu(MenuBuilder menuBuilder, Configuration configuration) {
+            mConfiguration = new Configuration(configuration);
+            int size = menuBuilder.size();
+            mIds = new int[size];
+            mTitles = new CharSequence[size];
+            mIconStates = new Drawable.ConstantState[size];
+            mUnshareableIcons = new Drawable[size];
+            mVisible = new boolean[size];
+            mEnabled = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                MenuItem menuItem = menuBuilder.getItem(i);
+                mIds[i] = menuItem.getItemId();
+                mTitles[i] = menuItem.getTitle();
+                mVisible[i] = menuItem.isVisible();
+                mEnabled[i] = menuItem.isEnabled();
+                Drawable icon = menuItem.getIcon();
+                if (icon != null) {
+                    mIconStates[i] = icon.getConstantState();
+                    if (mIconStates[i] == null) {
+                        mUnshareableIcons[i] = icon;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Icons without a constant state can't be shared, such menus aren't cached and their
+         * parsed icons are handed to the (single) instance which parsed them
+         */
+        boolean isShareable() {
+            for (Drawable icon : mUnshareableIcons) {
+                if (icon != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int size() {
+            return mIds.length;
+        }
+
+        int getItemId(int index) {
+            return mIds[index];
+        }
+
+        int indexOfItem(int itemId) {
+            for (int i = 0; i < mIds.length; i++) {
+                if (mIds[i] == itemId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        CharSequence getTitle(int index) {
+            return mTitles[index];
+        }
+
+        boolean isVisible(int index) {
+            return mVisible[index];
+        }
+
+        boolean isEnabled(int index) {
+            return mEnabled[index];
+        }
+
+        @Nullable
+        Drawable.ConstantState getIconState(int index) {
+            return mIconStates[index];
+        }
+
+        /**
+         * @return a new icon drawable for the given item, sharing the cached constant state
+         */
+        @Nullable
+        Drawable newIcon(int index, Resources resources) {
+            if (mIconStates[index] != null) {
+                return mIconStates[index].newDrawable(resources);
+            }
+            return mUnshareableIcons[index];
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Joaquim Ley 2016. All Rights Reserved.
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.joaquimley.faboptions;
+
+import android.support.v4.os.TraceCompat;
+
+/**
+ * Systrace/Perfetto sections around the component hot paths, off unless enabled through
+ * {@link FabOptions#setTraceSectionsEnabled(boolean)}. Section names are stable between
+ * versions so captures can be compared.
+ */
+final class FabOptionsTrace {
+
+    static final String CONSTRUCTOR = "FabOptions#init";
+    static final String INIT_VIEWS = "FabOptions#initViews";
+    static final String SET_BUTTONS_MENU = "FabOptions#setButtonsMenu";
+    static final String UPDATE_BUTTONS_FROM_MENU = "FabOptions#updateButtonsFromMenu";
+    static final String EXPAND = "FabOptions#expand";
+    static final String COLLAPSE = "FabOptions#collapse";
+    static final String MEASURE = "FabOptions#onMeasure";
+    static final String BEHAVIOR_DEPENDENT_VIEW_CHANGED = "FabOptionsBehavior#onDependentViewChanged";
+
+    private static volatile boolean sEnabled;
+
+    private FabOptionsTrace() {
+    }
+
+    static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Must be paired with {@link #end(boolean)} on the same thread, passing the returned value
+     */
+    static boolean begin(String sectionName) {
+        if (!sEnabled) {
+            return false;
+        }
+        TraceCompat.beginSection(sectionName);
+        return true;
+    }
+
+    static void end(boolean begun) {
+        if (begun) {
+            TraceCompat.endSection();
+        }
+    }
+}